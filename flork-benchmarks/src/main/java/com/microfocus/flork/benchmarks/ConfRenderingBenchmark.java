@@ -0,0 +1,63 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.benchmarks;
+
+import com.microfocus.flork.kubernetes.api.utils.FlinkConfUtils;
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the Flink configuration directory of a job, as the create phase does for every new spec generation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfRenderingBenchmark {
+    @Param({"SMALL", "TYPICAL", "VERY_LARGE"})
+    public SpecSize size;
+
+    private FlinkJobCustomResource flinkJob;
+    private Path confPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        flinkJob = size.createJob();
+        confPath = Files.createTempDirectory("flork-benchmark-conf");
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSupport.deleteDirectory(confPath);
+    }
+
+    @Benchmark
+    public void prepareConfFilesFromSpec() {
+        BenchmarkSupport.prepareConfFilesFromSpec(flinkJob, confPath);
+    }
+
+    @Benchmark
+    public String writeConfYamlTo() {
+        return FlinkConfUtils.writeConfYamlTo(flinkJob, confPath);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.benchmarks;
+
+import com.microfocus.flork.kubernetes.api.v1.handlers.ConfigMapFlinkJobHandler;
+import com.microfocus.flork.kubernetes.api.v1.handlers.HandlerUtils;
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource;
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobStatus;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses job YAML, on its own and as part of rebuilding a job from its config maps
+ * (which is done on every informer event when running without the CRD).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResourceParsingBenchmark {
+    @Param({"SMALL", "TYPICAL", "VERY_LARGE"})
+    public SpecSize size;
+
+    private String resourceYaml;
+    private ConfigMap configMap;
+    private ConfigMap statusConfigMap;
+
+    @Setup
+    public void setUp() throws IOException {
+        FlinkJobCustomResource flinkJob = size.createJob();
+        resourceYaml = HandlerUtils.INSTANCE.getMAPPER().writeValueAsString(flinkJob);
+
+        configMap = new ConfigMapBuilder()
+                .withNewMetadata()
+                .withNamespace(flinkJob.getMetadata().getNamespace())
+                .withName(flinkJob.getMetadata().getName())
+                .withResourceVersion("2")
+                .endMetadata()
+                .addToData("customResource", resourceYaml)
+                .build();
+
+        flinkJob.getMetadata().setResourceVersion("1");
+        statusConfigMap = new ConfigMapBuilder()
+                .withNewMetadata()
+                .withName(ConfigMapFlinkJobHandler.getStatusConfigMapName(configMap))
+                .endMetadata()
+                .addToData(ConfigMapFlinkJobHandler.STATUS_CM_META_KEY, HandlerUtils.INSTANCE.getMAPPER().writeValueAsString(flinkJob.getMetadata()))
+                .addToData(ConfigMapFlinkJobHandler.STATUS_CM_STATUS_KEY, HandlerUtils.INSTANCE.getMAPPER().writeValueAsString(new FlinkJobStatus()))
+                .build();
+    }
+
+    @Benchmark
+    public FlinkJobCustomResource unmarshall() {
+        return BenchmarkSupport.unmarshallFlinkJob(resourceYaml);
+    }
+
+    @Benchmark
+    public FlinkJobCustomResource reconstructFromConfigMaps() {
+        return ConfigMapFlinkJobHandler.reconstructUnderlyingResource(configMap, statusConfigMap);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.benchmarks;
+
+import com.microfocus.flork.kubernetes.api.plugins.FlinkJobSpecView;
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobSpec;
+import io.fabric8.kubernetes.api.model.PodSpec;
+import org.apache.commons.lang3.SerializationUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares copying the decorator inputs through Java serialization (the previous approach)
+ * with copy-on-write views, for a decorator that only adds a couple of keys.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpecCopyBenchmark {
+    @Param({"SMALL", "TYPICAL", "VERY_LARGE"})
+    public SpecSize size;
+
+    private FlinkJobSpec spec;
+
+    @Setup
+    public void setUp() {
+        spec = size.createSpec();
+    }
+
+    private static Map<String, Object> decorate(Map<String, Object> flinkConf) {
+        flinkConf.put("metrics.reporters", "prom");
+        flinkConf.putIfAbsent("parallelism.default", 1);
+        return flinkConf;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Object flinkConfSerializationClone() {
+        Map<String, Object> clone = (Map<String, Object>) SerializationUtils.clone((Serializable) spec.flinkConf);
+        return decorate(clone);
+    }
+
+    @Benchmark
+    public Object flinkConfCopyOnWrite() {
+        return decorate(new FlinkJobSpecView(spec).getFlinkConf());
+    }
+
+    @Benchmark
+    public Object podSpecSerializationClone() {
+        PodSpec clone = SerializationUtils.clone(spec.jobManagerPodSpec);
+        clone.setServiceAccountName("flink");
+        return clone;
+    }
+
+    @Benchmark
+    public Object podSpecBuilderCopy() {
+        PodSpec copy = new FlinkJobSpecView(spec).getTaskManagerPodSpec();
+        copy.setServiceAccountName("flink");
+        return copy;
+    }
+}
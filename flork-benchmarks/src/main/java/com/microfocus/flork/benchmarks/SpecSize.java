@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.benchmarks;
+
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource;
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobSpec;
+import io.fabric8.kubernetes.api.model.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spec shapes shared by all benchmarks.
+ * Very large specs mostly consist of MB-sized additional configuration files.
+ */
+public enum SpecSize {
+    SMALL(5, 1, 5, 0, 0),
+    TYPICAL(40, 2, 30, 2, 4 * 1024),
+    VERY_LARGE(200, 4, 100, 8, 1024 * 1024);
+
+    private final int flinkConfEntries;
+    private final int containers;
+    private final int envVarsPerContainer;
+    private final int additionalConfFiles;
+    private final int additionalConfFileBytes;
+
+    SpecSize(int flinkConfEntries, int containers, int envVarsPerContainer, int additionalConfFiles, int additionalConfFileBytes) {
+        this.flinkConfEntries = flinkConfEntries;
+        this.containers = containers;
+        this.envVarsPerContainer = envVarsPerContainer;
+        this.additionalConfFiles = additionalConfFiles;
+        this.additionalConfFileBytes = additionalConfFileBytes;
+    }
+
+    public FlinkJobSpec createSpec() {
+        FlinkJobSpec spec = new FlinkJobSpec();
+        spec.jobClassName = "com.example.StreamingJob";
+        spec.jobArgs = new String[]{"--input", "kafka"};
+
+        spec.flinkConf = new LinkedHashMap<>();
+        spec.flinkConf.put("kubernetes.container.image", "flink:1.14.3");
+        spec.flinkConf.put("state.savepoints.dir", "s3://bucket/savepoints");
+        for (int i = 0; i < flinkConfEntries; i++) {
+            spec.flinkConf.put("benchmark.option-" + i, "value-" + i);
+        }
+
+        spec.jobManagerPodMeta = new ObjectMetaBuilder()
+                .addToLabels("app.kubernetes.io/part-of", "benchmark")
+                .addToAnnotations("benchmark/owner", "flork")
+                .build();
+
+        PodSpecBuilder podSpec = new PodSpecBuilder().withServiceAccountName("default");
+        for (int c = 0; c < containers; c++) {
+            List<EnvVar> env = new ArrayList<>();
+            for (int i = 0; i < envVarsPerContainer; i++) {
+                env.add(new EnvVar("ENV_" + i, "value-" + i, null));
+            }
+            podSpec.addNewContainer()
+                    .withName(c == 0 ? "flink-main-container" : "sidecar-" + c)
+                    .withImage("flink:1.14.3")
+                    .withEnv(env)
+                    .addNewVolumeMount().withName("data-" + c).withMountPath("/data/" + c).endVolumeMount()
+                    .withNewResources()
+                    .addToLimits("memory", new Quantity("2Gi"))
+                    .addToRequests("cpu", new Quantity("500m"))
+                    .endResources()
+                    .endContainer();
+            podSpec.addNewVolume().withName("data-" + c).withNewEmptyDir().endEmptyDir().endVolume();
+        }
+        spec.jobManagerPodSpec = podSpec.build();
+
+        if (additionalConfFiles > 0) {
+            Map<String, String> files = new LinkedHashMap<>();
+            String line = "benchmark.line = some configuration value\n";
+            String content = line.repeat(Math.max(1, additionalConfFileBytes / line.length()));
+            for (int i = 0; i < additionalConfFiles; i++) {
+                files.put("additional-" + i + ".properties", content);
+            }
+            spec.additionalConfFiles = files;
+        }
+
+        return spec;
+    }
+
+    public FlinkJobCustomResource createJob() {
+        FlinkJobCustomResource flinkJob = new FlinkJobCustomResource();
+        flinkJob.setMetadata(new ObjectMetaBuilder()
+                .withNamespace("flork")
+                .withName("benchmark-" + name().toLowerCase().replace('_', '-'))
+                .withGeneration(1L)
+                .build());
+        flinkJob.setSpec(createSpec());
+        return flinkJob;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.benchmarks;
+
+import com.microfocus.flork.kubernetes.api.v1.validators.FlinkJobValidator;
+import io.fabric8.kubernetes.api.model.admission.v1.AdmissionRequest;
+import io.fabric8.kubernetes.api.model.admission.v1.AdmissionReview;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reviews a job as the validating webhook does on every create and update.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidatorBenchmark {
+    @Param({"SMALL", "TYPICAL", "VERY_LARGE"})
+    public SpecSize size;
+
+    private final FlinkJobValidator validator = new FlinkJobValidator();
+    private AdmissionReview admissionReview;
+
+    @Setup
+    public void setUp() {
+        AdmissionRequest admissionRequest = new AdmissionRequest();
+        admissionRequest.setObject(size.createJob());
+        admissionRequest.setUid("benchmark");
+
+        admissionReview = new AdmissionReview();
+        admissionReview.setRequest(admissionRequest);
+    }
+
+    @Benchmark
+    public AdmissionReview review() {
+        return validator.review(admissionReview);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.benchmarks
+
+import com.microfocus.flork.kubernetes.api.utils.FlinkConfUtils
+import com.microfocus.flork.kubernetes.api.v1.handlers.HandlerUtils
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import kotlinx.coroutines.runBlocking
+import java.nio.file.Path
+
+/**
+ * Entry points that cannot be called directly from the Java benchmarks (suspending or reified functions).
+ */
+object BenchmarkSupport {
+    @JvmStatic
+    fun prepareConfFilesFromSpec(flinkJob: FlinkJobCustomResource, confPath: Path) = runBlocking {
+        FlinkConfUtils.prepareConfFilesFromSpec(flinkJob, confPath)
+    }
+
+    @JvmStatic
+    fun unmarshallFlinkJob(yaml: String): FlinkJobCustomResource {
+        return HandlerUtils.unmarshall(yaml)
+    }
+
+    @JvmStatic
+    fun deleteDirectory(path: Path) {
+        path.toFile().deleteRecursively()
+    }
+}
@@ -22,6 +22,91 @@ object RuntimeConstants {
     @JvmField
     val POD_NAME: String = System.getenv("POD_NAME") ?: UUID.randomUUID().toString()
 
+    @JvmField
+    val TENANT_ID: String = System.getenv("TENANT_ID") ?: "default"
+
+    @JvmField
+    val MANAGED_NAMESPACES: List<String> = System.getenv("MANAGED_NAMESPACES")?.split(",") ?: emptyList()
+
+    /**
+     * If greater than 0, leadership is determined per shard instead of per resource.
+     */
+    @JvmField
+    val LEADER_ELECTION_SHARDS: Int = System.getenv("LEADER_ELECTION_SHARDS")?.toIntOrNull() ?: 0
+
+    /**
+     * Expected number of controller replicas per tenant, only used to balance shards.
+     */
+    @JvmField
+    val CONTROLLER_REPLICAS: Int = System.getenv("CONTROLLER_REPLICAS")?.toIntOrNull() ?: 1
+
+    /**
+     * Number of coroutines that hand coalesced reconciliation requests over to the resources' phasers, for all namespaces.
+     * It doesn't bound how many resources are reconciled concurrently, phasers do that independently.
+     */
+    @JvmField
+    val RECONCILE_DISPATCH_WORKERS: Int = System.getenv("RECONCILE_DISPATCH_WORKERS")?.toIntOrNull() ?: 4
+
+    /**
+     * Initial delay before a failed reconciliation is retried, doubled after each consecutive failure.
+     */
+    @JvmField
+    val RECONCILE_BACKOFF_BASE_MILLIS: Long = System.getenv("RECONCILE_BACKOFF_BASE_MILLIS")?.toLongOrNull() ?: 1_000L
+
+    @JvmField
+    val RECONCILE_BACKOFF_CAP_MILLIS: Long = System.getenv("RECONCILE_BACKOFF_CAP_MILLIS")?.toLongOrNull() ?: 300_000L
+
+    /**
+     * Failed status patches are retried with exponential backoff starting at this delay, until the deadline passes.
+     */
+    @JvmField
+    val STATUS_PATCH_BACKOFF_BASE_MILLIS: Long = System.getenv("STATUS_PATCH_BACKOFF_BASE_MILLIS")?.toLongOrNull() ?: 200L
+
+    @JvmField
+    val STATUS_PATCH_BACKOFF_CAP_MILLIS: Long = System.getenv("STATUS_PATCH_BACKOFF_CAP_MILLIS")?.toLongOrNull() ?: 10_000L
+
+    @JvmField
+    val STATUS_PATCH_DEADLINE_MILLIS: Long = System.getenv("STATUS_PATCH_DEADLINE_MILLIS")?.toLongOrNull() ?: 120_000L
+
+    /**
+     * How long to wait for the deletion of a job's Flink HA config maps before deploying it anyway.
+     */
+    @JvmField
+    val HA_CLEANUP_TIMEOUT_MILLIS: Long = System.getenv("HA_CLEANUP_TIMEOUT_MILLIS")?.toLongOrNull() ?: 60_000L
+
+    /**
+     * Number of HA config map cleanups of deleted jobs that can run concurrently, independently of [RECONCILE_DISPATCH_WORKERS].
+     */
+    @JvmField
+    val HA_CLEANUP_WORKERS: Int = System.getenv("HA_CLEANUP_WORKERS")?.toIntOrNull() ?: 4
+
+    /**
+     * Size of the executor shared by all REST clients that communicate with Flink job managers.
+     */
+    @JvmField
+    val FLINK_REST_CLIENT_THREADS: Int = System.getenv("FLINK_REST_CLIENT_THREADS")?.toIntOrNull() ?: 2
+
+    /**
+     * Maximum number of rendered configuration directories kept for unchanged specs, 0 disables the cache.
+     */
+    @JvmField
+    val RENDER_CACHE_SIZE: Int = System.getenv("RENDER_CACHE_SIZE")?.toIntOrNull() ?: 32
+
+    /**
+     * Optional directory with jars that contain decorators, reloaded when they change.
+     */
+    @JvmField
+    val DECORATOR_PLUGINS_DIR: String? = System.getenv("DECORATOR_PLUGINS_DIR")
+
+    @JvmField
+    val DECORATOR_PLUGINS_CHECK_INTERVAL_MILLIS: Long = System.getenv("DECORATOR_PLUGINS_CHECK_INTERVAL_MILLIS")?.toLongOrNull() ?: 30_000L
+
+    /**
+     * How much history the continuous flight recording keeps, 0 disables it.
+     */
+    @JvmField
+    val JFR_MAX_AGE_MINUTES: Long = System.getenv("JFR_MAX_AGE_MINUTES")?.toLongOrNull() ?: 30L
+
     @JvmField
     val SSL_ALGORITHMS = System.getenv("FLINK_SSL_ALGORITHMS") ?: "TLS_DHE_RSA_WITH_AES_128_GCM_SHA256,TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256,TLS_DHE_RSA_WITH_AES_256_GCM_SHA384,TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384"
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import com.microfocus.flork.kubernetes.api.plugins.FlinkConfDecorator
+import com.microfocus.flork.kubernetes.api.plugins.PodSpecDecorator
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.net.URLClassLoader
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.*
+import kotlin.io.path.extension
+import kotlin.io.path.getLastModifiedTime
+import kotlin.io.path.isDirectory
+
+/**
+ * Discovers decorators once, sorted by priority, from the classpath and from jars in an optional plugins directory.
+ * The directory is checked for changes at most once per interval when decorators are requested,
+ * and all decorators are rediscovered if any jar was added, removed or modified.
+ * If that fails, e.g. because of a broken jar, the previous decorators are kept and it is retried at the next check;
+ * if it already fails initially, only the classpath's decorators are used until then.
+ */
+class DecoratorRegistry internal constructor(
+        private val pluginsDir: Path?,
+        private val checkIntervalMillis: Long
+) {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(DecoratorRegistry::class.java)
+
+        @JvmStatic
+        val GLOBAL = DecoratorRegistry(RuntimeConstants.DECORATOR_PLUGINS_DIR?.let { Paths.get(it) },
+                RuntimeConstants.DECORATOR_PLUGINS_CHECK_INTERVAL_MILLIS)
+    }
+
+    class Decorators internal constructor(
+            val generation: Long,
+            val flinkConfDecorators: List<FlinkConfDecorator>,
+            val podSpecDecorators: List<PodSpecDecorator>,
+            internal val pluginsState: String
+    ) {
+        /**
+         * Identifies the decorators' behavior for caching purposes.
+         */
+        val fingerprint: String by lazy {
+            val names = flinkConfDecorators.map { "${it.javaClass.name}@${it.priority()}" } +
+                    podSpecDecorators.map { "${it.javaClass.name}@${it.priority()}" }
+            names.joinToString(separator = ",") + "|" + pluginsState
+        }
+    }
+
+    @Volatile
+    private var lastCheckMillis = 0L
+
+    @Volatile
+    private var decorators = loadInitial()
+
+    fun get(): Decorators {
+        if (pluginsDir != null && System.currentTimeMillis() - lastCheckMillis >= checkIntervalMillis) {
+            reloadIfChanged()
+        }
+        return decorators
+    }
+
+    @Synchronized
+    fun reloadIfChanged(): Boolean {
+        lastCheckMillis = System.currentTimeMillis()
+        val current = decorators
+        return try {
+            val state = getPluginsState()
+            if (state == current.pluginsState) {
+                return false
+            }
+
+            LOG.info("Decorator plugins changed, reloading them.")
+            decorators = load(current.generation + 1L, state)
+            true
+        } catch (e: Exception) {
+            // e.g. a jar removed while listing the directory
+            LOG.error("Could not reload decorator plugins, keeping the previous ones:", e)
+            false
+        } catch (e: ServiceConfigurationError) {
+            LOG.error("Could not load decorator plugins, keeping the previous ones:", e)
+            false
+        }
+    }
+
+    // with an empty plugins state in case of errors, so the next check retries
+    private fun loadInitial(): Decorators {
+        return try {
+            load(0L, getPluginsState())
+        } catch (e: Exception) {
+            LOG.error("Could not load decorator plugins, using only the classpath's decorators:", e)
+            load(0L, "", emptyList())
+        } catch (e: ServiceConfigurationError) {
+            LOG.error("Could not load decorator plugins, using only the classpath's decorators:", e)
+            load(0L, "", emptyList())
+        }
+    }
+
+    // jar names with their sizes and modification times, empty without plugins directory
+    private fun getPluginsState(): String {
+        val jars = getPluginJars()
+        return jars.joinToString(separator = ";") { "${it.fileName}:${Files.size(it)}:${it.getLastModifiedTime().toMillis()}" }
+    }
+
+    private fun getPluginJars(): List<Path> {
+        if (pluginsDir == null || !pluginsDir.isDirectory()) {
+            return emptyList()
+        }
+        return Files.list(pluginsDir).use { paths ->
+            paths.filter { it.extension == "jar" }.sorted().toList()
+        }
+    }
+
+    private fun load(generation: Long, pluginsState: String, jars: List<Path> = getPluginJars()): Decorators {
+        val parent = DecoratorRegistry::class.java.classLoader
+        // a replaced class loader isn't closed because decorators might still be in use, it's left to the GC
+        val classLoader = if (jars.isEmpty()) parent else URLClassLoader(jars.map { it.toUri().toURL() }.toTypedArray(), parent)
+
+        val decorators = Decorators(
+                generation,
+                ServiceLoader.load(FlinkConfDecorator::class.java, classLoader).sortedBy { it.priority() },
+                ServiceLoader.load(PodSpecDecorator::class.java, classLoader).sortedBy { it.priority() },
+                pluginsState
+        )
+        LOG.info("Loaded {} Flink conf decorator(s) and {} pod spec decorator(s) from the classpath and {} plugin jar(s).",
+                decorators.flinkConfDecorators.size, decorators.podSpecDecorators.size, jars.size)
+        return decorators
+    }
+}
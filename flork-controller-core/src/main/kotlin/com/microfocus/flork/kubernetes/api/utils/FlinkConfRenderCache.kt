@@ -0,0 +1,162 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import com.fasterxml.jackson.databind.MapperFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import io.fabric8.kubernetes.client.informers.cache.Cache
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.withContext
+import org.apache.flink.configuration.Configuration
+import org.apache.flink.configuration.GlobalConfiguration
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.nio.charset.StandardCharsets
+import java.nio.file.Path
+import java.security.MessageDigest
+import java.util.*
+import kotlin.io.path.createTempDirectory
+
+/**
+ * Keeps rendered configuration directories (Flink conf, pod templates, additional files) of recently deployed specs.
+ * Entries are addressed by a hash of the resource's name, its spec and the loaded decorators,
+ * so unchanged specs are rendered only once until they are evicted (least recently used first).
+ * A directory is only deleted after its last user releases it.
+ */
+object FlinkConfRenderCache {
+    private val LOG: Logger = LoggerFactory.getLogger(FlinkConfRenderCache::class.java)
+
+    private val HASH_MAPPER: ObjectMapper = ObjectMapper()
+            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+
+    // access-ordered, guarded by this object
+    private val ENTRIES = LinkedHashMap<String, RenderedConf>(16, 0.75f, true)
+
+    class RenderedConf internal constructor(val hash: String, val confPath: Path, private val flinkConfig: Configuration) {
+        internal var users = 0
+        internal var evicted = false
+
+        /**
+         * Returns a copy that callers can modify.
+         */
+        fun getFlinkConfig(): Configuration = Configuration(flinkConfig)
+    }
+
+    @JvmStatic
+    fun getRenderHash(flinkJob: FlinkJobCustomResource): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(Cache.metaNamespaceKeyFunc(flinkJob).toByteArray(StandardCharsets.UTF_8))
+        digest.update(HASH_MAPPER.writeValueAsBytes(flinkJob.spec))
+        digest.update(DecoratorRegistry.GLOBAL.get().fingerprint.toByteArray(StandardCharsets.UTF_8))
+        return digest.digest().joinToString(separator = "") { "%02x".format(it) }
+    }
+
+    /**
+     * Returns the rendered configuration for the job's current spec, rendering it if necessary.
+     * Every call must be followed by [release].
+     */
+    suspend fun acquire(flinkJob: FlinkJobCustomResource): RenderedConf = withContext(Dispatchers.IO) {
+        val jobKey = Cache.metaNamespaceKeyFunc(flinkJob)
+        val hash = getRenderHash(flinkJob)
+
+        synchronized(this@FlinkConfRenderCache) {
+            ENTRIES[hash]?.let {
+                LOG.debug("Reusing rendered configuration of '{}' from {}.", jobKey, it.confPath)
+                it.users++
+                return@withContext it
+            }
+        }
+
+        val confPath = runInterruptible {
+            createTempDirectory(prefix = jobKey.replace("/", "_") + "_")
+        }
+        val rendered = try {
+            FlinkConfUtils.prepareConfFilesFromSpec(flinkJob, confPath)
+            RenderedConf(hash, confPath, runInterruptible { GlobalConfiguration.loadConfiguration(confPath.toString()) })
+        } catch (e: Throwable) {
+            FlinkConfUtils.cleanFiles(confPath)
+            throw e
+        }
+
+        val obsolete = mutableListOf<RenderedConf>()
+        val ans = synchronized(this@FlinkConfRenderCache) {
+            val existing = ENTRIES[hash]
+            when {
+                existing != null -> {
+                    // rendered concurrently
+                    obsolete.add(rendered)
+                    existing
+                }
+                RuntimeConstants.RENDER_CACHE_SIZE <= 0 -> {
+                    rendered.evicted = true
+                    rendered
+                }
+                else -> {
+                    ENTRIES[hash] = rendered
+                    evictEldest(obsolete)
+                    rendered
+                }
+            }.also { it.users++ }
+        }
+
+        obsolete.forEach { FlinkConfUtils.cleanFiles(it.confPath) }
+        return@withContext ans
+    }
+
+    suspend fun release(rendered: RenderedConf) {
+        val delete = synchronized(this) {
+            rendered.users--
+            rendered.evicted && rendered.users <= 0
+        }
+        if (delete) {
+            FlinkConfUtils.cleanFiles(rendered.confPath)
+        }
+    }
+
+    private fun evictEldest(obsolete: MutableList<RenderedConf>) {
+        val iterator = ENTRIES.values.iterator()
+        while (ENTRIES.size > RuntimeConstants.RENDER_CACHE_SIZE && iterator.hasNext()) {
+            val eldest = iterator.next()
+            iterator.remove()
+            eldest.evicted = true
+            LOG.trace("Evicting rendered configuration in {}.", eldest.confPath)
+            if (eldest.users <= 0) {
+                obsolete.add(eldest)
+            }
+        }
+    }
+
+    fun getSize(): Int = synchronized(this) { ENTRIES.size }
+
+    suspend fun reset() {
+        val obsolete = mutableListOf<RenderedConf>()
+        synchronized(this) {
+            ENTRIES.values.forEach {
+                it.evicted = true
+                if (it.users <= 0) {
+                    obsolete.add(it)
+                }
+            }
+            ENTRIES.clear()
+        }
+        obsolete.forEach { FlinkConfUtils.cleanFiles(it.confPath) }
+    }
+}
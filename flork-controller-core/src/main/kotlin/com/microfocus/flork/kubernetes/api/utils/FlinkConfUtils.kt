@@ -20,8 +20,7 @@ import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator
 import com.microfocus.flork.kubernetes.api.constants.FlorkConstants
-import com.microfocus.flork.kubernetes.api.plugins.FlinkConfDecorator
-import com.microfocus.flork.kubernetes.api.plugins.PodSpecDecorator
+import com.microfocus.flork.kubernetes.api.plugins.FlinkJobSpecView
 import com.microfocus.flork.kubernetes.api.plugins.PodSpecType
 import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
 import com.microfocus.flork.kubernetes.api.v1.model.FlorkConf
@@ -34,7 +33,7 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.NonCancellable
 import kotlinx.coroutines.runInterruptible
 import kotlinx.coroutines.withContext
-import org.apache.commons.lang3.SerializationUtils
+import org.apache.flink.configuration.Configuration
 import org.apache.flink.configuration.DeploymentOptions
 import org.apache.flink.configuration.DeploymentOptionsInternal
 import org.apache.flink.configuration.GlobalConfiguration
@@ -75,15 +74,18 @@ object FlinkConfUtils {
     }
 
     const val FLINK_CONF_DIR_KEY = "kubernetes.flink.conf.dir"
+
+    private const val IN_MEMORY_CONF_DIR = "/flork/in-memory/conf"
     
     suspend fun prepareConfFilesFromSpec(flinkJob: FlinkJobCustomResource, confPath: Path) = withContext(Dispatchers.IO) {
         runInterruptible {
-            val jobManagerPodMeta = flinkJob.spec.jobManagerPodMeta ?: ObjectMeta()
-            val jobManagerPodSpec = flinkJob.spec.jobManagerPodSpec ?: PodSpec()
-            val taskManagerPodSpec = flinkJob.spec.taskManagerPodSpec ?: SerializationUtils.clone(jobManagerPodSpec)
+            val specView = FlinkJobSpecView(flinkJob.spec)
+            val jobManagerPodMeta = specView.jobManagerPodMeta
+            val jobManagerPodSpec = specView.jobManagerPodSpec
+            val taskManagerPodSpec = specView.taskManagerPodSpec
 
             val desiredFlinkConfPath = writeConfYamlTo(flinkJob, confPath)
-            val podSpecDecorators = ServiceLoader.load(PodSpecDecorator::class.java).sortedBy { it.priority() }
+            val podSpecDecorators = DecoratorRegistry.GLOBAL.get().podSpecDecorators
 
             Files.newOutputStream(confPath.resolve(templateFileName(PodSpecType.JOB_MANAGER))).use { os ->
                 var podSpec = jobManagerPodSpec
@@ -92,7 +94,7 @@ object FlinkConfUtils {
                     podSpec = decorator.decorate(podSpec, jobManagerPodMeta, flinkJob.spec.florkConf)
                 }
                 val pod = getFlinkPodTemplate(flinkJob, podSpec, desiredFlinkConfPath).apply {
-                    val annotations = jobManagerPodMeta.annotations ?: mutableMapOf()
+                    val annotations = LinkedHashMap(jobManagerPodMeta.annotations.orEmpty())
                     annotations["${FlorkConstants.CRD_GROUP}/epoch"] = System.currentTimeMillis().toString()
 
                     metadata.annotations = annotations
@@ -122,32 +124,71 @@ object FlinkConfUtils {
     fun writeConfYamlTo(flinkJob: FlinkJobCustomResource, confPath: Path): String {
         val desiredFlinkConfPath: String
         Files.newOutputStream(confPath.resolve(GlobalConfiguration.FLINK_CONF_FILENAME)).use { os ->
-            val flinkConf = decorateConsideringMetadata(flinkJob.spec.flinkConf, confPath.toString(), flinkJob, flinkJob.spec.florkConf)
-            desiredFlinkConfPath = flinkConf.getOrDefault(FLINK_CONF_DIR_KEY, "/opt/flink/conf").toString()
-            if (flinkJob.spec.florkConf.shadowConfigFiles) {
-                flinkConf[FLINK_CONF_DIR_KEY] = FlorkConstants.FLORK_CONF_DIR
-            }
-            LOG.trace("Writing {} with: {}", GlobalConfiguration.FLINK_CONF_FILENAME, flinkConf)
-            MAPPER.writeValue(os, flinkConf)
+            val flinkConf = getFinalFlinkConf(flinkJob, confPath.toString())
+            desiredFlinkConfPath = flinkConf.desiredFlinkConfPath
+            LOG.trace("Writing {} with: {}", GlobalConfiguration.FLINK_CONF_FILENAME, flinkConf.map)
+            MAPPER.writeValue(os, flinkConf.map)
         }
         return desiredFlinkConfPath
     }
 
+    /**
+     * Builds the same configuration that [GlobalConfiguration.loadConfiguration] would load from [writeConfYamlTo]'s output,
+     * but without touching the file system.
+     * Paths that point to the configuration directory will point to the given one, which doesn't need to exist,
+     * so this is only meant for clients of an existing cluster.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun loadConfigurationFromSpec(flinkJob: FlinkJobCustomResource, confDir: String = IN_MEMORY_CONF_DIR): Configuration {
+        val flinkConf = getFinalFlinkConf(flinkJob, confDir)
+        return parseConfYaml(MAPPER.writeValueAsString(flinkConf.map))
+    }
+
+    // mirrors GlobalConfiguration.loadYAMLResource, which isn't public
     @JvmStatic
-    private fun decorateConsideringMetadata(map: MutableMap<String, Any>?, confDir: String, resource: HasMetadata, florkConf: FlorkConf): MutableMap<String, Any> {
-        var decorated = when (map) {
-            null -> {
-                mutableMapOf()
+    fun parseConfYaml(yaml: String): Configuration {
+        val config = Configuration()
+        for (line in yaml.lineSequence()) {
+            val conf = line.split("#", limit = 2)[0].trim()
+            if (conf.isEmpty()) {
+                continue
             }
-            !is Serializable -> {
-                map
+
+            val kv = conf.split(": ", limit = 2)
+            if (kv.size == 1) {
+                LOG.warn("Error while trying to split key and value in Flink configuration: {}", conf)
+                continue
             }
-            else -> {
-                SerializationUtils.clone(map)
+
+            val key = kv[0].trim()
+            val value = kv[1].trim()
+            if (key.isEmpty() || value.isEmpty()) {
+                LOG.warn("Error after splitting key and value in Flink configuration: {}", conf)
+                continue
             }
+
+            config.setString(key, value)
         }
+        return config
+    }
+
+    private class FinalFlinkConf(val map: MutableMap<String, Any>, val desiredFlinkConfPath: String)
+
+    private fun getFinalFlinkConf(flinkJob: FlinkJobCustomResource, confDir: String): FinalFlinkConf {
+        val flinkConf = decorateConsideringMetadata(FlinkJobSpecView(flinkJob.spec).flinkConf, confDir, flinkJob, flinkJob.spec.florkConf)
+        val desiredFlinkConfPath = flinkConf.getOrDefault(FLINK_CONF_DIR_KEY, "/opt/flink/conf").toString()
+        if (flinkJob.spec.florkConf.shadowConfigFiles) {
+            flinkConf[FLINK_CONF_DIR_KEY] = FlorkConstants.FLORK_CONF_DIR
+        }
+        return FinalFlinkConf(flinkConf, desiredFlinkConfPath)
+    }
+
+    @JvmStatic
+    private fun decorateConsideringMetadata(flinkConfView: MutableMap<String, Any>, confDir: String, resource: HasMetadata, florkConf: FlorkConf): MutableMap<String, Any> {
+        var decorated = flinkConfView
 
-        for (decorator in ServiceLoader.load(FlinkConfDecorator::class.java).sortedBy { it.priority() }) {
+        for (decorator in DecoratorRegistry.GLOBAL.get().flinkConfDecorators) {
             LOG.debug("Decorating Flink conf with {}.", decorator)
             decorated = decorator.decorate(decorated, florkConf)
         }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import jdk.jfr.Category
+import jdk.jfr.Description
+import jdk.jfr.Event
+import jdk.jfr.Label
+import jdk.jfr.Name
+import jdk.jfr.StackTrace
+
+/**
+ * Java Flight Recorder events of the reconciliation path, so that stalls can be correlated with GC, thread and socket events.
+ * Fields of this base class are recorded for all subclasses.
+ *
+ * @see FlorkRecording
+ */
+@Category("Flork")
+@StackTrace(false)
+abstract class FlorkEvent : Event() {
+    @Label("Resource Key")
+    @JvmField
+    var resourceKey: String? = null
+
+    @Label("Generation")
+    @JvmField
+    var generation: Long = 0L
+
+    @Label("Phase")
+    @Description("Flork phase of the resource when the event started.")
+    @JvmField
+    var phase: String? = null
+
+    /**
+     * Runs [block] as this event's duration and commits it even if [block] fails.
+     */
+    inline fun <T> record(block: () -> T): T {
+        begin()
+        try {
+            return block()
+        } finally {
+            commit()
+        }
+    }
+}
+
+fun <E : FlorkEvent> E.describe(resourceKey: String, generation: Long?, phase: Any?): E {
+    this.resourceKey = resourceKey
+    this.generation = generation ?: 0L
+    this.phase = phase?.toString()
+    return this
+}
+
+@Name("com.microfocus.flork.PhaserMessage")
+@Label("Phaser Message")
+@Description("Processing of a resource version by its phaser.")
+class PhaserMessageEvent : FlorkEvent()
+
+@Name("com.microfocus.flork.InitialDeployment")
+@Label("Initial Deployment")
+@Description("Deployment of a job's Flink cluster until the job is DEPLOYING.")
+class InitialDeploymentEvent : FlorkEvent()
+
+@Name("com.microfocus.flork.ClusterDeployment")
+@Label("Cluster Deployment")
+@Description("Creation of a job's Kubernetes resources by Flink's cluster deployer.")
+class ClusterDeploymentEvent : FlorkEvent() {
+    @Label("Attempts")
+    @JvmField
+    var attempts: Int = 0
+}
+
+@Name("com.microfocus.flork.Shutdown")
+@Label("Shutdown")
+@Description("Shutdown of a job's Flink cluster, including a savepoint if configured.")
+class ShutdownEvent : FlorkEvent() {
+    @Label("Savepoint Path")
+    @JvmField
+    var savepointPath: String? = null
+}
+
+@Name("com.microfocus.flork.StatusPatchRetry")
+@Label("Status Patch Retry")
+@Description("Failed attempt to patch a resource's status that will be retried.")
+class StatusPatchRetryEvent : FlorkEvent() {
+    @Label("Error")
+    @JvmField
+    var error: String? = null
+}
+
+@Name("com.microfocus.flork.Leadership")
+@Label("Leadership")
+@Description("Leader election callback of a resource.")
+class LeadershipEvent : FlorkEvent() {
+    @Label("Change")
+    @JvmField
+    var change: String? = null
+
+    @Label("Leader")
+    @JvmField
+    var leader: String? = null
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import com.microfocus.flork.kubernetes.api.v1.model.FlorkPhase
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.Meter
+import io.micrometer.core.instrument.Metrics
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.Timer
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.cancellation.CancellationException
+
+/**
+ * Micrometer meters of the reconcilers.
+ * They are registered in [Metrics.globalRegistry], so the hosting application decides how they are exported,
+ * e.g. Spring Boot adds its Prometheus registry to it.
+ */
+object FlorkMetrics {
+    const val PHASE_DURATION = "flork.phase.duration"
+    const val TRANSITION_DURATION = "flork.transition.duration"
+    const val REDEPLOYMENT_DURATION = "flork.redeployment.duration"
+    const val SAVEPOINT_DURATION = "flork.savepoint.duration"
+    const val HA_CLEANUP_DURATION = "flork.ha.cleanup.duration"
+    const val ACTIVE_PHASERS = "flork.phasers.active"
+    const val LED_RESOURCES = "flork.leadership.resources"
+    const val STATUS_PATCH_RETRIES = "flork.status.patch.retries"
+    const val HANDLER_EVENTS = "flork.handler.events"
+    const val KUBERNETES_API_REQUESTS = "flork.kubernetes.api.requests"
+    const val KUBERNETES_API_ERRORS = "flork.kubernetes.api.errors"
+    const val KUBERNETES_WATCH_RECONNECTS = "flork.kubernetes.watch.reconnects"
+    const val WORK_QUEUE_DEPTH = "flork.workqueue.depth"
+    const val WORK_QUEUE_IN_FLIGHT = "flork.workqueue.inflight"
+    const val WORK_QUEUE_WAIT = "flork.workqueue.wait"
+
+    const val OUTCOME_SUCCESS = "success"
+    const val OUTCOME_FAILURE = "failure"
+    const val OUTCOME_CANCELLED = "cancelled"
+    const val OUTCOME_TIMEOUT = "timeout"
+
+    private val GAUGES = ConcurrentHashMap<Meter.Id, AtomicInteger>()
+
+    /**
+     * Short resource kind used as tag, e.g. "job" for FlinkJobCustomResource.
+     */
+    @JvmStatic
+    fun getKind(resourceClass: Class<*>): String {
+        return resourceClass.simpleName.removePrefix("Flink").removeSuffix("CustomResource").lowercase()
+    }
+
+    /**
+     * Times [block] as [name], tagging it with the outcome.
+     */
+    inline fun <T> time(name: String, tags: Tags, block: () -> T): T {
+        val startNanos = System.nanoTime()
+        var outcome = OUTCOME_FAILURE
+        try {
+            return block().also { outcome = OUTCOME_SUCCESS }
+        } catch (e: CancellationException) {
+            outcome = OUTCOME_CANCELLED
+            throw e
+        } finally {
+            record(name, tags.and("outcome", outcome), startNanos)
+        }
+    }
+
+    inline fun <T> timePhase(phase: String, block: () -> T): T {
+        return time(PHASE_DURATION, Tags.of("phase", phase), block)
+    }
+
+    /**
+     * Records how long it took to move a resource from one phase to the next, starting at [startNanos].
+     */
+    @JvmStatic
+    fun recordTransition(from: FlorkPhase?, to: FlorkPhase, startNanos: Long) {
+        record(TRANSITION_DURATION, Tags.of("from", from?.name ?: "NONE", "to", to.name), startNanos)
+    }
+
+    @JvmStatic
+    fun record(name: String, tags: Tags, startNanos: Long) {
+        Timer.builder(name)
+                .tags(tags)
+                .register(Metrics.globalRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS)
+    }
+
+    @JvmStatic
+    fun phaserStarted(kind: String) {
+        getGauge(ACTIVE_PHASERS, Tags.of("kind", kind)).incrementAndGet()
+    }
+
+    @JvmStatic
+    fun phaserStopped(kind: String) {
+        getGauge(ACTIVE_PHASERS, Tags.of("kind", kind)).decrementAndGet()
+    }
+
+    @JvmStatic
+    fun leadershipAcquired(kind: String) {
+        getGauge(LED_RESOURCES, Tags.of("kind", kind, "replica", RuntimeConstants.POD_NAME)).incrementAndGet()
+    }
+
+    @JvmStatic
+    fun leadershipReleased(kind: String) {
+        getGauge(LED_RESOURCES, Tags.of("kind", kind, "replica", RuntimeConstants.POD_NAME)).decrementAndGet()
+    }
+
+    @JvmStatic
+    fun statusPatchRetried(kind: String) {
+        Metrics.counter(STATUS_PATCH_RETRIES, Tags.of("kind", kind)).increment()
+    }
+
+    /**
+     * Counts informer events, [type] is one of add, update, resync or delete.
+     */
+    @JvmStatic
+    fun handlerEvent(kind: String, type: String) {
+        Metrics.counter(HANDLER_EVENTS, Tags.of("kind", kind, "type", type)).increment()
+    }
+
+    /**
+     * Keys waiting to be processed by the [queue] work queues, summed over all queues with that name.
+     */
+    @JvmStatic
+    fun workQueueDepthChanged(queue: String, delta: Int) {
+        getGauge(WORK_QUEUE_DEPTH, Tags.of("queue", queue)).addAndGet(delta)
+    }
+
+    @JvmStatic
+    fun workQueueInFlightChanged(queue: String, delta: Int) {
+        getGauge(WORK_QUEUE_IN_FLIGHT, Tags.of("queue", queue)).addAndGet(delta)
+    }
+
+    /**
+     * Records how long a key waited in the [queue] work queue, from [enqueuedAtNanos] until a worker took it.
+     */
+    @JvmStatic
+    fun workQueueWaited(queue: String, enqueuedAtNanos: Long) {
+        record(WORK_QUEUE_WAIT, Tags.of("queue", queue), enqueuedAtNanos)
+    }
+
+    @JvmStatic
+    fun reset() {
+        GAUGES.keys.forEach { id ->
+            GAUGES.remove(id)
+            Metrics.globalRegistry.remove(id)
+        }
+    }
+
+    private fun getGauge(name: String, tags: Tags): AtomicInteger {
+        val id = Meter.Id(name, tags, null, null, Meter.Type.GAUGE)
+        return GAUGES.computeIfAbsent(id) {
+            // the registry only keeps a weak reference to the value
+            AtomicInteger(0).also { value ->
+                Gauge.builder(name, value, AtomicInteger::toDouble)
+                        .tags(tags)
+                        .register(Metrics.globalRegistry)
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import jdk.jfr.Configuration
+import jdk.jfr.FlightRecorder
+import jdk.jfr.Recording
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.nio.file.Path
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Continuous, low-overhead flight recording with JFR's default settings, which include [FlorkEvent]s.
+ */
+object FlorkRecording {
+    private val LOG: Logger = LoggerFactory.getLogger(FlorkRecording::class.java)
+
+    private const val NAME = "flork"
+
+    private val RECORDING = AtomicReference<Recording?>()
+
+    /**
+     * Starts the recording unless it's disabled or already running, returns whether it's running afterwards.
+     */
+    @JvmStatic
+    @Synchronized
+    fun start(): Boolean {
+        if (RECORDING.get() != null) {
+            return true
+        }
+        if (RuntimeConstants.JFR_MAX_AGE_MINUTES <= 0L || !FlightRecorder.isAvailable()) {
+            LOG.info("Continuous flight recording is disabled or not available.")
+            return false
+        }
+
+        val recording = Recording(Configuration.getConfiguration("default")).apply {
+            name = NAME
+            maxAge = Duration.ofMinutes(RuntimeConstants.JFR_MAX_AGE_MINUTES)
+            isToDisk = true
+        }
+        recording.start()
+        RECORDING.set(recording)
+        LOG.info("Started continuous flight recording of the last {} minutes.", RuntimeConstants.JFR_MAX_AGE_MINUTES)
+        return true
+    }
+
+    /**
+     * Writes the data of all running recordings, including ones started with JVM options, to [target].
+     *
+     * @return false if nothing is being recorded
+     */
+    @JvmStatic
+    fun dump(target: Path): Boolean {
+        if (!FlightRecorder.isAvailable()) {
+            return false
+        }
+        FlightRecorder.getFlightRecorder().takeSnapshot().use { snapshot ->
+            if (snapshot.size == 0L) {
+                return false
+            }
+            snapshot.dump(target)
+        }
+        return true
+    }
+
+    @JvmStatic
+    @Synchronized
+    fun reset() {
+        RECORDING.getAndSet(null)?.close()
+    }
+}
@@ -20,8 +20,6 @@ import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
 import io.fabric8.kubernetes.api.model.Container
 import io.fabric8.kubernetes.api.model.EnvVar
 import io.fabric8.kubernetes.api.model.PodSpec
-import org.apache.flink.client.deployment.ClusterClientFactory
-import org.apache.flink.client.deployment.ClusterDescriptor
 import org.apache.flink.configuration.Configuration
 import org.apache.flink.configuration.SecurityOptions
 import org.apache.flink.kubernetes.configuration.KubernetesConfigOptions
@@ -46,7 +44,7 @@ object FlorkUtils {
     }
 
     @JvmStatic
-    fun getDescriptorWithTlsIfNeeded(jobKey: String, factory: ClusterClientFactory<String>, baseConfig: Configuration, preferInternalService: Boolean): ClusterDescriptor<String> {
+    fun applyRestClientSettings(jobKey: String, baseConfig: Configuration, preferInternalService: Boolean) {
         if (preferInternalService) {
             // at this point the deployment is done, so this will only affect the rest client
             baseConfig.set(KubernetesConfigOptions.REST_SERVICE_EXPOSED_TYPE, KubernetesConfigOptions.ServiceExposedType.ClusterIP)
@@ -54,7 +52,7 @@ object FlorkUtils {
 
         if (!SecurityOptions.isRestSSLEnabled(baseConfig)) {
             LOG.debug("Job '{}' does not have TLS enabled for REST communication.", jobKey)
-            return factory.createClusterDescriptor(baseConfig)
+            return
         }
 
         LOG.debug("Using TLS for REST communication with '{}'.", jobKey)
@@ -74,7 +72,5 @@ object FlorkUtils {
             baseConfig.set(SecurityOptions.SSL_REST_KEYSTORE_PASSWORD, kspw)
             baseConfig.set(SecurityOptions.SSL_REST_KEY_PASSWORD, kspw)
         }
-
-        return factory.createClusterDescriptor(baseConfig)
     }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import io.micrometer.core.instrument.Metrics
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.Timer
+import okhttp3.HttpUrl
+import okhttp3.Interceptor
+import okhttp3.Response
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Records the Kubernetes API requests of a fabric8 client in [FlorkMetrics]' registry,
+ * tagged with the same verb and resource that the API server's audit log and priority & fairness use.
+ * Watches are only timed until the API server answers.
+ * New watches (informers, one-off waits) list the same resources first, whereas fabric8 re-establishes a closed watch
+ * without listing, so a watch that wasn't preceded by a list since the last one with the same selectors counts as a reconnect.
+ */
+class KubernetesApiMetricsInterceptor : Interceptor {
+    companion object {
+        private const val CORE_API_PREFIX = "api"
+        private const val GROUP_API_PREFIX = "apis"
+
+        private const val MAX_TRACKED_WATCHES = 1_000
+
+        internal fun getVerb(method: String, watch: Boolean, named: Boolean): String {
+            return when (method) {
+                "GET" -> if (watch) "watch" else if (named) "get" else "list"
+                "POST" -> "create"
+                "PUT" -> "update"
+                "PATCH" -> "patch"
+                "DELETE" -> if (named) "delete" else "deletecollection"
+                else -> method.lowercase()
+            }
+        }
+
+        /**
+         * Splits an API path into namespace, resource (with subresource if any) and whether a single object is addressed.
+         */
+        internal fun parsePath(path: String): Triple<String, String, Boolean> {
+            val segments = path.split("/").filter { it.isNotEmpty() }
+            val start = when (segments.firstOrNull()) {
+                CORE_API_PREFIX -> 2
+                GROUP_API_PREFIX -> 3
+                else -> return Triple("", "other", false)
+            }
+            var rest = segments.drop(start)
+
+            var namespace = ""
+            // namespaces themselves are a cluster-scoped resource
+            if (rest.size > 2 && rest[0] == "namespaces") {
+                namespace = rest[1]
+                rest = rest.drop(2)
+            }
+
+            return when (rest.size) {
+                0 -> Triple(namespace, "other", false)
+                1 -> Triple(namespace, rest[0], false)
+                2 -> Triple(namespace, rest[0], true)
+                else -> Triple(namespace, "${rest[0]}/${rest[2]}", true)
+            }
+        }
+
+        private fun getStatusClass(code: Int): String {
+            return "${code / 100}xx"
+        }
+    }
+
+    // watched resources and selectors, true if they were listed again after the last watch; least recently watched are evicted
+    private val watches = object : LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Boolean>?) = size > MAX_TRACKED_WATCHES
+    }
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val url = request.url()
+        val watch = url.queryParameter("watch") == "true"
+        val (namespace, resource, named) = parsePath(url.encodedPath())
+        val tags = Tags.of(
+                "verb", getVerb(request.method(), watch, named),
+                "resource", resource,
+                "namespace", namespace
+        )
+
+        if (watch) {
+            countWatch(url, tags)
+        } else if (request.method() == "GET" && !named) {
+            trackList(url)
+        }
+
+        val startNanos = System.nanoTime()
+        val response = try {
+            chain.proceed(request)
+        } catch (e: IOException) {
+            recordRequest(tags.and("status", "IOException"), startNanos)
+            throw e
+        }
+
+        val code = response.code()
+        recordRequest(tags.and("status", getStatusClass(code)), startNanos)
+        if (code == 429 || code >= 500) {
+            Metrics.counter(FlorkMetrics.KUBERNETES_API_ERRORS, tags.and("code", code.toString())).increment()
+        }
+        return response
+    }
+
+    private fun recordRequest(tags: Tags, startNanos: Long) {
+        Timer.builder(FlorkMetrics.KUBERNETES_API_REQUESTS)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS)
+    }
+
+    // resource versions, limits and the like differ between requests for the same resources
+    private fun getWatchKey(url: HttpUrl): String {
+        return "${url.encodedPath()}?labelSelector=${url.queryParameter("labelSelector").orEmpty()}&fieldSelector=${url.queryParameter("fieldSelector").orEmpty()}"
+    }
+
+    private fun trackList(url: HttpUrl) {
+        val key = getWatchKey(url)
+        synchronized(watches) {
+            if (watches.containsKey(key)) {
+                watches[key] = true
+            }
+        }
+    }
+
+    private fun countWatch(url: HttpUrl, tags: Tags) {
+        val listedSinceLastWatch = synchronized(watches) {
+            watches.put(getWatchKey(url), false)
+        }
+        if (listedSinceLastWatch == false) {
+            Metrics.counter(FlorkMetrics.KUBERNETES_WATCH_RECONNECTS, tags).increment()
+        }
+    }
+}
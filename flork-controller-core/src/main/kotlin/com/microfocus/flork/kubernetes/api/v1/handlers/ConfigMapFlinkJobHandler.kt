@@ -18,12 +18,11 @@ package com.microfocus.flork.kubernetes.api.v1.handlers
 
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.microfocus.flork.kubernetes.api.constants.FlorkConstants
-import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
-import com.microfocus.flork.kubernetes.api.utils.JsonPatchOperation
 import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
 import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobStatus
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.CoroutineFlinkJobReconciler
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.factories.CoroutineFlinkJobReconcilerFactoryWithoutCRD
-import com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers.AbstractReconcilerPhaser
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.factories.FlinkJobReconcilerFactory
 import io.fabric8.kubernetes.api.model.*
 import io.fabric8.kubernetes.client.KubernetesClient
 import io.fabric8.kubernetes.client.dsl.base.PatchContext
@@ -40,23 +39,27 @@ import java.util.concurrent.atomic.AtomicReference
 
 typealias StatusConfigMap = ConfigMap
 
-class ConfigMapFlinkJobHandler private constructor(private val k8sClient: KubernetesClient) : ResourceEventHandler<ConfigMap> {
+class ConfigMapFlinkJobHandler internal constructor(
+        private val k8sClient: KubernetesClient,
+        reconcilerFactory: FlinkJobReconcilerFactory,
+        private val isLeading: (crKey: String) -> Boolean
+) : ResourceEventHandler<ConfigMap> {
     companion object {
         private val LOG = LoggerFactory.getLogger(ConfigMapFlinkJobHandler::class.java)
 
         private const val STATUS_CM_SUFFIX = "flork-status"
-        private const val STATUS_CM_META_KEY = "crMetadata"
-
+        const val STATUS_CM_META_KEY = "crMetadata"
         const val STATUS_CM_STATUS_KEY = "crStatus"
 
         private val STATUS_CMS: ConcurrentMap<String, StatusConfigMap> = ConcurrentHashMap()
+        private val STATUS_CM_LISTER = AtomicReference<Lister<StatusConfigMap>?>()
 
         @JvmField
         val JSON_MAPPER = ObjectMapper()
 
         @JvmStatic
         fun createInformersWithHandler(k8sClient: KubernetesClient, resyncPeriodSeconds: Long): Triple<ConfigMapFlinkJobHandler, SharedIndexInformer<ConfigMap>, SharedIndexInformer<StatusConfigMap>> {
-            val handler = ConfigMapFlinkJobHandler(k8sClient)
+            val handler = ConfigMapFlinkJobHandler(k8sClient, CoroutineFlinkJobReconcilerFactoryWithoutCRD(), CoroutineFlinkJobReconciler::isLeading)
             val informer = HandlerUtils.getPopulatedInformer(
                     k8sClient,
                     FlorkConstants.FLORK_FJ_CM_LABEL,
@@ -73,8 +76,16 @@ class ConfigMapFlinkJobHandler private constructor(private val k8sClient: Kubern
             return "${hasMeta.metadata.name}-$STATUS_CM_SUFFIX"
         }
 
-        private fun getExistingConfigMap(k8sClient: KubernetesClient, name: String): ConfigMap? {
-            return k8sClient.configMaps()
+        /**
+         * Served from [lister] when possible, a cache miss falls back to the API server
+         * since the informer could simply not have seen a new config map yet.
+         */
+        private fun getExistingConfigMap(
+                k8sClient: KubernetesClient,
+                name: String,
+                lister: Lister<ConfigMap>? = STATUS_CM_LISTER.get()
+        ): ConfigMap? {
+            return lister?.get(name) ?: k8sClient.configMaps()
                     .inNamespace(k8sClient.namespace)
                     .withName(name)
                     .get()
@@ -127,10 +138,17 @@ class ConfigMapFlinkJobHandler private constructor(private val k8sClient: Kubern
         }
 
         private fun getUnderlyingResource(k8sClient: KubernetesClient, cm: ConfigMap): FlinkJobCustomResource {
+            return reconstructUnderlyingResource(cm, getExistingConfigMap(k8sClient, getStatusConfigMapName(cm)))
+        }
+
+        /**
+         * Rebuilds the custom resource stored in [cm], taking metadata and status from its status CM if it exists.
+         */
+        @JvmStatic
+        fun reconstructUnderlyingResource(cm: ConfigMap, statusConfigMap: StatusConfigMap?): FlinkJobCustomResource {
             val resourceYaml = cm.data["customResource"] ?: throw IllegalArgumentException("Config map does not have key 'customResource'.")
             val cr = HandlerUtils.unmarshall<FlinkJobCustomResource>(resourceYaml)
 
-            val statusConfigMap = getExistingConfigMap(k8sClient, getStatusConfigMapName(cm))
             if (statusConfigMap != null) {
                 cr.metadata = HandlerUtils.unmarshall(statusConfigMap.data[STATUS_CM_META_KEY])
                 cr.status = HandlerUtils.unmarshall(statusConfigMap.data[STATUS_CM_STATUS_KEY])
@@ -144,7 +162,7 @@ class ConfigMapFlinkJobHandler private constructor(private val k8sClient: Kubern
             return cr
         }
 
-        private fun maybeUpdateStatusConfigMap(k8sClient: KubernetesClient, name: String, cr: FlinkJobCustomResource): StatusConfigMap? {
+        private fun maybeUpdateStatusConfigMap(k8sClient: KubernetesClient, name: String, cr: FlinkJobCustomResource, isLeading: (String) -> Boolean): StatusConfigMap? {
             val crKey = if (cr.metadata.namespace == null) {
                 LOG.warn("Namespace of {} was null.", cr.metadata.name)
                 "${k8sClient.namespace}/${cr.metadata.name}"
@@ -152,7 +170,7 @@ class ConfigMapFlinkJobHandler private constructor(private val k8sClient: Kubern
                 Cache.metaNamespaceKeyFunc(cr)
             }
 
-            if (isPodNotLeading(k8sClient, crKey)) {
+            if (isPodNotLeading(crKey, isLeading)) {
                 return null
             }
 
@@ -166,47 +184,35 @@ class ConfigMapFlinkJobHandler private constructor(private val k8sClient: Kubern
                 return existing
             }
 
-            val patchOperations = mutableListOf(
-                    JsonPatchOperation(
-                            "replace",
-                            "/metadata/labels/${FlorkConstants.METADATA_CM_VALIDITY_LABEL}",
-                            cr.metadata?.resourceVersion
-                    ),
-                    JsonPatchOperation(
-                            "replace",
-                            "/data/$STATUS_CM_META_KEY",
-                            HandlerUtils.MAPPER.writeValueAsString(cr.metadata)
+            // null removes a previous exception if there is one, the cached CM might not show it yet
+            val patch = mapOf(
+                    "metadata" to mapOf("labels" to mapOf(FlorkConstants.METADATA_CM_VALIDITY_LABEL to cr.metadata?.resourceVersion)),
+                    "data" to mapOf(
+                            STATUS_CM_META_KEY to HandlerUtils.MAPPER.writeValueAsString(cr.metadata),
+                            "exception" to null
                     )
-            ).apply {
-                if (existing?.data?.containsKey("exception") == true) {
-                    add(JsonPatchOperation("remove", "/data/exception"))
-                }
-            }
+            )
 
-            return patchConfigMap(k8sClient, name, JSON_MAPPER.writeValueAsString(patchOperations))
+            return patchConfigMap(k8sClient, name, JSON_MAPPER.writeValueAsString(patch))
         }
 
-        private tailrec fun isPodNotLeading(k8sClient: KubernetesClient, crKey: String): Boolean {
-            val leaseKey = AbstractReconcilerPhaser.getLeaseKey(crKey)
-            val lease = k8sClient.leases()
-                    .inNamespace(k8sClient.namespace)
-                    .withName(leaseKey)
-                    .get()
-
-            if (lease == null) {
-                LOG.warn("Attempted to update status of '{}' before a leader was elected, retrying.", crKey)
-                Thread.sleep(500L)
-                return isPodNotLeading(k8sClient, crKey)
-            }
-
-            val flag = lease.spec?.holderIdentity != RuntimeConstants.POD_NAME
+        /**
+         * Only a replica with a phaser for [crKey] can lead it, if no leader has been elected yet,
+         * the status CM is updated again once the eventual leader patches the status.
+         */
+        private fun isPodNotLeading(crKey: String, isLeading: (String) -> Boolean): Boolean {
+            val flag = !isLeading(crKey)
             LOG.trace("Not leading? {}", flag)
             return flag
         }
 
+        /**
+         * [cmDiff] is a JSON merge patch, so it doesn't depend on the current contents of the CM,
+         * which are usually taken from the informer's cache.
+         */
         private fun patchConfigMap(k8sClient: KubernetesClient, name: String, cmDiff: String?): StatusConfigMap? {
             val patchContext = PatchContext.Builder()
-                    .withPatchType(PatchType.JSON)
+                    .withPatchType(PatchType.JSON_MERGE)
                     .build()
 
             return try {
@@ -221,40 +227,30 @@ class ConfigMapFlinkJobHandler private constructor(private val k8sClient: Kubern
             }
         }
 
-        private fun updateStatusConfigMap(k8sClient: KubernetesClient, namespace: String, name: String, e: Exception): StatusConfigMap? {
-            if (isPodNotLeading(k8sClient, "$namespace/${computeNameFromStatusConfigMap(name)}")) {
+        private fun updateStatusConfigMap(k8sClient: KubernetesClient, namespace: String, name: String, e: Exception, isLeading: (String) -> Boolean): StatusConfigMap? {
+            if (isPodNotLeading("$namespace/${computeNameFromStatusConfigMap(name)}", isLeading)) {
                 return null
             }
 
-            val existing = getExistingConfigMap(k8sClient, name)
-            val op = if (existing?.data?.containsKey("exception") == true) "replace" else "add"
-
-            val patchOperations = listOf(
-                    JsonPatchOperation(
-                            "replace",
-                            "/metadata/labels/${FlorkConstants.METADATA_CM_VALIDITY_LABEL}",
-                            "false"
-                    ),
-                    JsonPatchOperation(
-                            op,
-                            "/data/exception",
-                            e.stackTraceToString().replace("\t", "  ")
-                    )
+            val patch = mapOf(
+                    "metadata" to mapOf("labels" to mapOf(FlorkConstants.METADATA_CM_VALIDITY_LABEL to "false")),
+                    "data" to mapOf("exception" to e.stackTraceToString().replace("\t", "  "))
             )
 
-            return patchConfigMap(k8sClient, name, JSON_MAPPER.writeValueAsString(patchOperations))
+            return patchConfigMap(k8sClient, name, JSON_MAPPER.writeValueAsString(patch))
         }
     }
 
     private val lister = AtomicReference<Lister<ConfigMap>?>()
-    private val wrappedHandler = FlinkJobHandler.create(k8sClient, CoroutineFlinkJobReconcilerFactoryWithoutCRD())
+    private val wrappedHandler = FlinkJobHandler.create(k8sClient, reconcilerFactory)
 
     val paused = AtomicBoolean(false)
 
-    private val innerInformer = k8sClient.configMaps()
+    internal val innerInformer = k8sClient.configMaps()
             .inNamespace(k8sClient.namespace)
             .withLabel(FlorkConstants.FLORK_FJ_SCM_LABEL)
             .inform(StatusConfigMapHandler())
+            .also { STATUS_CM_LISTER.set(Lister(it.indexer, k8sClient.namespace)) }
 
     override fun onAdd(obj: ConfigMap) {
         if (paused.get()) {
@@ -268,10 +264,10 @@ class ConfigMapFlinkJobHandler private constructor(private val k8sClient: Kubern
             try {
                 val cr = getUnderlyingResource(k8sClient, obj)
                 wrappedHandler.onAdd(cr)
-                maybeUpdateStatusConfigMap(k8sClient, name, cr)
+                maybeUpdateStatusConfigMap(k8sClient, name, cr, isLeading)
             } catch (e: Exception) {
                 LOG.error("Could not process underlying resource:", e)
-                updateStatusConfigMap(k8sClient, obj.metadata.namespace, name, e)
+                updateStatusConfigMap(k8sClient, obj.metadata.namespace, name, e, isLeading)
             }
         }
     }
@@ -296,12 +292,12 @@ class ConfigMapFlinkJobHandler private constructor(private val k8sClient: Kubern
         STATUS_CMS.merge(name, newObj) { _, _ ->
             try {
                 val cr = getUnderlyingResource(k8sClient, newObj)
-                maybeUpdateStatusConfigMap(k8sClient, name, cr).also {
+                maybeUpdateStatusConfigMap(k8sClient, name, cr, isLeading).also {
                     wrappedHandler.onUpdate(oldResource, cr)
                 }
             } catch (e: Exception) {
                 LOG.error("Could not process update of underlying resource:", e)
-                updateStatusConfigMap(k8sClient, newObj.metadata.namespace, name, e)
+                updateStatusConfigMap(k8sClient, newObj.metadata.namespace, name, e, isLeading)
             }
         }
     }
@@ -325,7 +321,7 @@ class ConfigMapFlinkJobHandler private constructor(private val k8sClient: Kubern
     }
 
     private fun onStatusUpdate(name: String) {
-        getExistingConfigMap(k8sClient, name)?.let {
+        getExistingConfigMap(k8sClient, name, lister.get()?.namespace(k8sClient.namespace))?.let {
             onUpdate(it, it)
         }
     }
@@ -346,7 +342,7 @@ class ConfigMapFlinkJobHandler private constructor(private val k8sClient: Kubern
 
             LOG.trace("Status CM updated: {}", newObj.metadata.name)
             val crKey = computeNameFromStatusConfigMap(newObj.metadata.name)
-            if (isPodNotLeading(k8sClient, "${newObj.metadata.namespace}/$crKey")) {
+            if (isPodNotLeading("${newObj.metadata.namespace}/$crKey", isLeading)) {
                 STATUS_CMS[newObj.metadata.name] = newObj
             }
             onStatusUpdate(crKey)
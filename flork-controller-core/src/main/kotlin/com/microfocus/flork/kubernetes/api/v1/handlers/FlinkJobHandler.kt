@@ -16,6 +16,7 @@
 
 package com.microfocus.flork.kubernetes.api.v1.handlers
 
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
 import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.factories.CoroutineFlinkJobReconcilerFactory
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.factories.FlinkJobReconcilerFactory
@@ -47,11 +48,14 @@ class FlinkJobHandler private constructor(k8sClient: KubernetesClient, reconcile
         }
     }
 
+    private val kind = FlorkMetrics.getKind(FlinkJobCustomResource::class.java)
+
     private val lister: AtomicReference<Lister<FlinkJobCustomResource>?> = AtomicReference()
     private val reconciler = reconcilerFactory.create(k8sClient, lister)
 
     // must be non-blocking, at least initially, otherwise inform(handler, resync) doesn't return
     override fun onAdd(obj: FlinkJobCustomResource) {
+        FlorkMetrics.handlerEvent(kind, "add")
         val key = Cache.metaNamespaceKeyFunc(obj)
         LOG.info("Flink job added with creation timestamp {} and generation {}: {}",
                 obj.metadata.creationTimestamp, obj.metadata.generation, key)
@@ -60,10 +64,14 @@ class FlinkJobHandler private constructor(k8sClient: KubernetesClient, reconcile
     }
 
     override fun onUpdate(oldObj: FlinkJobCustomResource?, newObj: FlinkJobCustomResource) {
+        // resyncs deliver the cached object again
+        val type = if (oldObj?.metadata?.resourceVersion == newObj.metadata.resourceVersion) "resync" else "update"
+        FlorkMetrics.handlerEvent(kind, type)
         reconciler.reconcile(newObj)
     }
 
     override fun onDelete(obj: FlinkJobCustomResource, deletedFinalStateUnknown: Boolean) {
+        FlorkMetrics.handlerEvent(kind, "delete")
         LOG.info("Flink job deleted in namespace {}: {}", obj.metadata.namespace, obj.metadata.name)
         reconciler.delete(obj)
     }
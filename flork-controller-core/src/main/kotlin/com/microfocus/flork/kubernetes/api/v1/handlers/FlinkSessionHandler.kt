@@ -16,6 +16,7 @@
 
 package com.microfocus.flork.kubernetes.api.v1.handlers
 
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
 import com.microfocus.flork.kubernetes.api.v1.model.FlinkSessionCustomResource
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.factories.CoroutineFlinkSessionReconcilerFactory
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.factories.FlinkSessionReconcilerFactory
@@ -42,11 +43,14 @@ class FlinkSessionHandler private constructor(k8sClient: KubernetesClient) : Res
         }
     }
 
+    private val kind = FlorkMetrics.getKind(FlinkSessionCustomResource::class.java)
+
     private val lister: AtomicReference<Lister<FlinkSessionCustomResource>?> = AtomicReference()
     private val reconciler = RECONCILER_FACTORY.get().create(k8sClient, lister)
 
     // must be non-blocking, at least initially, otherwise inform(handler, resync) doesn't return
     override fun onAdd(obj: FlinkSessionCustomResource) {
+        FlorkMetrics.handlerEvent(kind, "add")
         val key = Cache.metaNamespaceKeyFunc(obj)
         LOG.info("Flink session added with creation timestamp {} and generation {}: {}",
                 obj.metadata.creationTimestamp, obj.metadata.generation, key)
@@ -55,10 +59,14 @@ class FlinkSessionHandler private constructor(k8sClient: KubernetesClient) : Res
     }
 
     override fun onUpdate(oldObj: FlinkSessionCustomResource, newObj: FlinkSessionCustomResource) {
+        // resyncs deliver the cached object again
+        val type = if (oldObj.metadata.resourceVersion == newObj.metadata.resourceVersion) "resync" else "update"
+        FlorkMetrics.handlerEvent(kind, type)
         reconciler.reconcile(newObj)
     }
 
     override fun onDelete(obj: FlinkSessionCustomResource, deletedFinalStateUnknown: Boolean) {
+        FlorkMetrics.handlerEvent(kind, "delete")
         LOG.info("Flink sesion deleted in namespace {}: {}", obj.metadata.namespace, obj.metadata.name)
         reconciler.delete(obj)
     }
@@ -16,15 +16,21 @@
 
 package com.microfocus.flork.kubernetes.api.v1.reconcilers
 
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
 import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers.AbstractReconcilerPhaser
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers.CoroutineFlinkJobPhaserWithoutCRD
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers.CoroutineFlinkJobReconcilerPhaser
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkHighAvailabilityCleanup
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.ReconcileBackoff
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.ReconcileWorkQueue
 import io.fabric8.kubernetes.api.model.DeletionPropagation
 import io.fabric8.kubernetes.client.KubernetesClient
 import io.fabric8.kubernetes.client.informers.cache.Cache
 import io.fabric8.kubernetes.client.informers.cache.Lister
 import kotlinx.coroutines.*
-import org.apache.flink.configuration.HighAvailabilityOptions
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.util.concurrent.ConcurrentHashMap
@@ -41,80 +47,164 @@ class CoroutineFlinkJobReconciler(
 
         private val COROUTINE_SCOPE = AtomicReference(createCoroutineScope())
         private val RECONCILER_STATES: ConcurrentMap<String, CoroutineFlinkJobReconcilerPhaser> = ConcurrentHashMap()
+        private val HA_CLEANUPS: ConcurrentMap<String, Job> = ConcurrentHashMap()
+        private val WAITING_FOR_HA_CLEANUPS: ConcurrentMap<String, FlinkJobCustomResource> = ConcurrentHashMap()
+        private val HA_CLEANUP_PERMITS = Semaphore(RuntimeConstants.HA_CLEANUP_WORKERS.coerceAtLeast(1))
+        private val WORK_QUEUE = AtomicReference(createWorkQueue(COROUTINE_SCOPE.get()))
+
+        internal val BACKOFF = ReconcileBackoff(RuntimeConstants.RECONCILE_BACKOFF_BASE_MILLIS, RuntimeConstants.RECONCILE_BACKOFF_CAP_MILLIS)
 
         private fun createCoroutineScope() = CoroutineScope(Dispatchers.IO + SupervisorJob() + CoroutineExceptionHandler { _, throwable ->
             LOG.error("Error during FlinkJob reconciliation:", throwable)
         })
 
+        // shared by the reconcilers of all namespaces, so the number of workers doesn't grow with them
+        private fun createWorkQueue(scope: CoroutineScope) = ReconcileWorkQueue<Work>("FlinkJob", scope,
+                RuntimeConstants.RECONCILE_DISPATCH_WORKERS, Work::then) { key, work ->
+            work.reconciler.handle(key, work.request)
+        }
+
         @JvmStatic
         fun resetScope() {
+            WAITING_FOR_HA_CLEANUPS.clear()
             RECONCILER_STATES.forEach { it.value.cancel() }
             COROUTINE_SCOPE.getAndSet(createCoroutineScope()).cancel()
+            WORK_QUEUE.set(createWorkQueue(COROUTINE_SCOPE.get()))
             RECONCILER_STATES.clear()
+            HA_CLEANUPS.clear()
         }
 
-        fun maybeCleanHighAvailability(k8sClient: KubernetesClient, flinkJob: FlinkJobCustomResource, key: String?) {
-            if (flinkJob.spec.flinkConf?.containsKey(HighAvailabilityOptions.HA_MODE.key()) == true && flinkJob.spec.florkConf?.cleanHighAvailability == true) {
-                LOG.info("Cleaning HA config maps for '{}'.", key)
-                val labels = mapOf(
-                        "app" to flinkJob.metadata.name,
-                        "configmap-type" to "high-availability",
-                        "type" to "flink-native-kubernetes"
-                )
-                val cmOperation = k8sClient.configMaps()
-                        .inNamespace(flinkJob.metadata.namespace)
-                        .withLabels(labels)
-
-                var list = cmOperation.list()
-                while (list.items?.isNotEmpty() == true) {
-                    LOG.debug("Deleting {} config map(s).", list.items?.size)
-                    cmOperation.delete()
-                    Thread.sleep(100L)
-                    list = cmOperation.list()
-                }
-            }
+        /**
+         * How long the next retry of a failed reconciliation would wait (before jitter), 0 if the last one succeeded.
+         */
+        @JvmStatic
+        fun getBackoffMillis(key: String): Long {
+            return BACKOFF.getBackoffMillis(key)
+        }
+
+        @JvmStatic
+        fun getWorkQueueStats(): ReconcileWorkQueue.Stats {
+            return WORK_QUEUE.get().getStats()
+        }
+
+        /**
+         * Whether this replica's phaser for [key] currently leads it, without reading the lease from the API server.
+         */
+        @JvmStatic
+        fun isLeading(key: String): Boolean {
+            return RECONCILER_STATES[key]?.isLeading() == true
+        }
+
+        /**
+         * Diagnostic views of all phasers known to this replica, whether they are leading or not.
+         */
+        @JvmStatic
+        fun getPhaserSnapshots(): List<AbstractReconcilerPhaser.Snapshot> {
+            return RECONCILER_STATES.values.map { it.getSnapshot() }
         }
     }
 
+    /**
+     * What is pending for a key: a deletion that must be completed first, and/or the latest version to reconcile.
+     */
+    data class Request(val deleted: FlinkJobCustomResource?, val latest: FlinkJobCustomResource?) {
+        fun then(added: Request): Request {
+            // a deletion supersedes anything pending, a re-creation after it must wait until it's done
+            return if (added.deleted != null) added else Request(deleted, added.latest)
+        }
+    }
+
+    private class Work(val reconciler: CoroutineFlinkJobReconciler, val request: Request) {
+        fun then(added: Work) = Work(added.reconciler, request.then(added.request))
+    }
+
     override fun reconcile(flinkJob: FlinkJobCustomResource) {
-        COROUTINE_SCOPE.get().launch {
-            val key = Cache.metaNamespaceKeyFunc(flinkJob)
-            val phaserCandidate = if (crdBased) {
-                CoroutineFlinkJobReconcilerPhaser(this, k8sClient, lister, key)
-            } else {
-                CoroutineFlinkJobPhaserWithoutCRD(this, k8sClient, lister, key)
-            }
-            val state = RECONCILER_STATES.merge(key, phaserCandidate) { old, new ->
-                when {
-                    old.isActive() -> {
-                        new.cancel()
-                        old
-                    }
-                    old.wasGenerationObserved(flinkJob) -> {
-                        new.cancel()
-                        old
-                    }
-                    else -> {
-                        new
-                    }
+        WORK_QUEUE.get().add(Cache.metaNamespaceKeyFunc(flinkJob), Work(this, Request(null, flinkJob)))
+    }
+
+    /**
+     * Only hands the request over to the resource's phaser, which reconciles it independently of the work queue.
+     */
+    private suspend fun handle(key: String, request: Request) {
+        request.deleted?.let { processDeletion(key, it) }
+        request.latest?.let { process(key, it) }
+    }
+
+    private suspend fun process(key: String, flinkJob: FlinkJobCustomResource) {
+        // a re-created resource must not be deployed while the HA config maps of the deleted one are being cleaned,
+        // it's added again afterwards instead of holding a worker until then
+        val cleanup = HA_CLEANUPS[key]
+        if (cleanup != null && !cleanup.isCompleted) {
+            LOG.info("Waiting for HA cleanup of '{}' before reconciling it.", key)
+            if (WAITING_FOR_HA_CLEANUPS.put(key, flinkJob) == null) {
+                cleanup.invokeOnCompletion {
+                    WAITING_FOR_HA_CLEANUPS.remove(key)?.let { reconcile(it) }
                 }
             }
-            if (state?.start(this, key) == true || state?.isActive() == true) {
-                state.channel.send(flinkJob)
+            return
+        }
+
+        val scope = COROUTINE_SCOPE.get()
+        val state = RECONCILER_STATES.compute(key) { _, old ->
+            when {
+                old == null -> createPhaser(scope, key)
+                old.isActive() -> old
+                old.wasGenerationObserved(flinkJob) -> old
+                else -> createPhaser(scope, key)
             }
         }
+        if (state?.start(scope, key) == true || state?.isActive() == true) {
+            state.channel.send(flinkJob)
+        }
     }
 
+    private fun createPhaser(scope: CoroutineScope, key: String): CoroutineFlinkJobReconcilerPhaser {
+        return if (crdBased) {
+            CoroutineFlinkJobReconcilerPhaser(scope, k8sClient, lister, key)
+        } else {
+            CoroutineFlinkJobPhaserWithoutCRD(scope, k8sClient, lister, key)
+        }
+    }
+
+    /**
+     * Called on the informer's thread, so the actual cleanup goes through the work queue,
+     * ordered with respect to any other request for the same key.
+     */
     override fun delete(flinkJob: FlinkJobCustomResource) {
-        val key = Cache.metaNamespaceKeyFunc(flinkJob)
+        WORK_QUEUE.get().add(Cache.metaNamespaceKeyFunc(flinkJob), Work(this, Request(flinkJob, null)))
+    }
+
+    private suspend fun processDeletion(key: String, flinkJob: FlinkJobCustomResource) {
+        WAITING_FOR_HA_CLEANUPS.remove(key)
         RECONCILER_STATES.remove(key)?.cancel()
+        BACKOFF.reset(key)
 
-        k8sClient.apps().deployments()
-                .inNamespace(flinkJob.metadata.namespace)
-                .withName(flinkJob.metadata.name)
-                .withPropagationPolicy(DeletionPropagation.FOREGROUND)
-                .delete()
+        runInterruptible {
+            k8sClient.apps().deployments()
+                    .inNamespace(flinkJob.metadata.namespace)
+                    .withName(flinkJob.metadata.name)
+                    .withPropagationPolicy(DeletionPropagation.FOREGROUND)
+                    .delete()
+        }
 
-        maybeCleanHighAvailability(k8sClient, flinkJob, key)
+        if (FlinkHighAvailabilityCleanup.isEnabled(flinkJob)) {
+            scheduleHighAvailabilityCleanup(key, flinkJob)
+        }
+    }
+
+    /**
+     * The cleanup can wait for a long time, so it doesn't hold a work queue worker, only a later request for the same key is deferred until it's done.
+     */
+    private fun scheduleHighAvailabilityCleanup(key: String, flinkJob: FlinkJobCustomResource) {
+        val previous = HA_CLEANUPS[key]
+        val cleanup = COROUTINE_SCOPE.get().launch(start = CoroutineStart.LAZY) {
+            previous?.join()
+            HA_CLEANUP_PERMITS.withPermit {
+                FlinkHighAvailabilityCleanup.cleanIfEnabled(k8sClient, flinkJob, key)
+            }
+        }
+        HA_CLEANUPS[key] = cleanup
+        cleanup.invokeOnCompletion { HA_CLEANUPS.remove(key, cleanup) }
+        cleanup.start()
     }
 }
@@ -17,6 +17,7 @@
 package com.microfocus.flork.kubernetes.api.v1.reconcilers
 
 import com.microfocus.flork.kubernetes.api.v1.model.FlinkSessionCustomResource
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers.AbstractReconcilerPhaser
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers.CoroutineFlinkSessionReconcilerPhaser
 import io.fabric8.kubernetes.api.model.DeletionPropagation
 import io.fabric8.kubernetes.client.KubernetesClient
@@ -46,6 +47,14 @@ class CoroutineFlinkSessionReconciler(private val k8sClient: KubernetesClient, p
             COROUTINE_SCOPE.getAndSet(createCoroutineScope()).cancel()
             RECONCILER_STATES.clear()
         }
+
+        /**
+         * Diagnostic views of all phasers known to this replica, whether they are leading or not.
+         */
+        @JvmStatic
+        fun getPhaserSnapshots(): List<AbstractReconcilerPhaser.Snapshot> {
+            return RECONCILER_STATES.values.map { it.getSnapshot() }
+        }
     }
 
     override fun reconcile(flinkSession: FlinkSessionCustomResource) {
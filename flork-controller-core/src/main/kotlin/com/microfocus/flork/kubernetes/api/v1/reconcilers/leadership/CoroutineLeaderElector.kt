@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.leadership
+
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.dsl.Namespaceable
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderElectionConfig
+import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.LeaderElectionRecord
+import kotlinx.coroutines.*
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.time.ZoneOffset
+import java.time.ZonedDateTime
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * Same algorithm as fabric8's LeaderElector, but suspending between attempts,
+ * so a thread is only used while a request to the API server is in flight.
+ */
+class CoroutineLeaderElector<C>(
+        private val k8sClient: C,
+        private val config: LeaderElectionConfig
+) where C : Namespaceable<C>, C : KubernetesClient {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(CoroutineLeaderElector::class.java)
+
+        private const val JITTER_FACTOR = 1.2
+
+        private fun now(): ZonedDateTime = ZonedDateTime.now(ZoneOffset.UTC)
+    }
+
+    private val lock = config.lock
+
+    private var observedRecord: LeaderElectionRecord? = null
+    private var reportedLeader: String? = null
+
+    /**
+     * Suspends until leadership is acquired and later lost, or until cancelled.
+     * Like fabric8's version, it doesn't try to re-acquire leadership after losing it.
+     */
+    suspend fun run() {
+        acquire()
+        config.leaderCallbacks.onStartLeading()
+        try {
+            renew()
+        } finally {
+            config.leaderCallbacks.onStopLeading()
+        }
+    }
+
+    private suspend fun acquire() {
+        LOG.debug("Attempting to acquire leader lease '{}'...", lock.describe())
+        while (true) {
+            val acquired = try {
+                tryAcquireOrRenew()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                LOG.error("Exception occurred while acquiring lock '{}'", lock.describe(), e)
+                false
+            }
+            reportTransitionIfLeaderChanged()
+
+            if (acquired) {
+                LOG.debug("Successfully acquired leader lease '{}'", lock.describe())
+                return
+            }
+            LOG.debug("Failed to acquire lease '{}' retrying...", lock.describe())
+            delay(jitter(config.retryPeriod.toMillis()))
+        }
+    }
+
+    private suspend fun renew() {
+        LOG.debug("Attempting to renew leader lease '{}'...", lock.describe())
+        while (true) {
+            val renewed = withTimeoutOrNull(config.renewDeadline.toMillis()) { tryRenew() }
+            if (renewed != true) {
+                LOG.debug("Failed to renew leader lease '{}'", lock.describe())
+                return
+            }
+            delay(config.retryPeriod.toMillis())
+        }
+    }
+
+    private suspend fun tryRenew(): Boolean {
+        while (true) {
+            try {
+                return tryAcquireOrRenew()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                LOG.debug("Exception occurred while renewing lock: {}", e.message, e)
+            } finally {
+                reportTransitionIfLeaderChanged()
+            }
+            delay(config.retryPeriod.toMillis())
+        }
+    }
+
+    private suspend fun tryAcquireOrRenew(): Boolean = runInterruptible(Dispatchers.IO) {
+        val now = now()
+        val oldRecord = lock.get(k8sClient)
+        if (oldRecord == null) {
+            val newRecord = LeaderElectionRecord(lock.identity(), config.leaseDuration, now, now, 0)
+            lock.create(k8sClient, newRecord)
+            observedRecord = newRecord
+            return@runInterruptible true
+        }
+
+        observedRecord = oldRecord
+        val isLeader = lock.identity() == oldRecord.holderIdentity
+        if (!isLeader && now.isBefore(oldRecord.renewTime.plus(oldRecord.leaseDuration))) {
+            LOG.debug("Lock is held by {} and has not yet expired", oldRecord.holderIdentity)
+            return@runInterruptible false
+        }
+
+        val newRecord = LeaderElectionRecord(
+                lock.identity(),
+                config.leaseDuration,
+                if (isLeader) oldRecord.acquireTime else now,
+                now,
+                if (isLeader) oldRecord.leaderTransitions else oldRecord.leaderTransitions + 1
+        )
+        newRecord.version = oldRecord.version
+        lock.update(k8sClient, newRecord)
+        observedRecord = newRecord
+        true
+    }
+
+    private fun reportTransitionIfLeaderChanged() {
+        val currentLeader = observedRecord?.holderIdentity ?: return
+        if (currentLeader != reportedLeader) {
+            LOG.debug("Leader changed from {} to {}", reportedLeader, currentLeader)
+            reportedLeader = currentLeader
+            config.leaderCallbacks.onNewLeader(currentLeader)
+        }
+    }
+
+    private fun jitter(millis: Long): Long {
+        return millis + (millis * JITTER_FACTOR * ThreadLocalRandom.current().nextDouble()).toLong()
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.leadership
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.NamespacedKubernetesClient
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderCallbacks
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderElectionConfigBuilder
+import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.LeaseLock
+import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.Lock
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Decides which controller replica owns a given resource.
+ */
+interface LeadershipManager {
+    companion object {
+        private val SHARDED_INSTANCE = AtomicReference<ShardedLeadershipManager?>()
+
+        @JvmStatic
+        fun isSharded() = RuntimeConstants.LEADER_ELECTION_SHARDS > 0
+
+        @JvmStatic
+        fun getLeaseName(resourceKey: String): String {
+            return if (isSharded()) {
+                ShardedLeadershipManager.getShardLeaseName(ShardedLeadershipManager.getShard(resourceKey, RuntimeConstants.LEADER_ELECTION_SHARDS))
+            } else {
+                PerResourceLeadershipManager.getLeaseName(resourceKey)
+            }
+        }
+
+        @JvmStatic
+        fun get(k8sClient: KubernetesClient, leaseDurationSeconds: Long): LeadershipManager {
+            if (!isSharded()) {
+                return PerResourceLeadershipManager(k8sClient, leaseDurationSeconds)
+            }
+
+            SHARDED_INSTANCE.get()?.let { return it }
+            val candidate = ShardedLeadershipManager(k8sClient, RuntimeConstants.LEADER_ELECTION_SHARDS, RuntimeConstants.CONTROLLER_REPLICAS, leaseDurationSeconds)
+            return if (SHARDED_INSTANCE.compareAndSet(null, candidate)) {
+                candidate
+            } else {
+                SHARDED_INSTANCE.get() ?: candidate
+            }
+        }
+
+        @JvmStatic
+        fun reset() {
+            SHARDED_INSTANCE.getAndSet(null)?.stop()
+        }
+
+        internal fun getBaseLeaderElectionConfig(name: String, lock: Lock, durationSeconds: Long): LeaderElectionConfigBuilder {
+            val deadlineMillis = durationSeconds * 2_000L / 3L
+            return LeaderElectionConfigBuilder()
+                    .withName(name)
+                    .withLock(lock)
+                    .withLeaseDuration(Duration.ofSeconds(durationSeconds))
+                    .withRenewDeadline(Duration.ofMillis(deadlineMillis))
+                    .withRetryPeriod(Duration.ofMillis(deadlineMillis / 4L))
+        }
+
+        internal fun getNamespacedClient(k8sClient: KubernetesClient): NamespacedKubernetesClient {
+            // same assumption as KubernetesClient.leaderElector()
+            return k8sClient as NamespacedKubernetesClient
+        }
+
+        internal fun getLeaseLock(k8sClient: KubernetesClient, leaseName: String): LeaseLock {
+            return LeaseLock(k8sClient.namespace, leaseName, RuntimeConstants.POD_NAME)
+        }
+    }
+
+    /**
+     * Suspends until cancelled, notifying [callbacks] whenever leadership of [resourceKey] changes.
+     */
+    suspend fun participate(resourceKey: String, callbacks: LeaderCallbacks)
+
+    /**
+     * Called once the resource's phaser has finished.
+     */
+    suspend fun cleanUp(resourceKey: String)
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.leadership
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderCallbacks
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runInterruptible
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+/**
+ * One lease per resource, every replica competes for every resource.
+ */
+class PerResourceLeadershipManager(
+        private val k8sClient: KubernetesClient,
+        private val leaseDurationSeconds: Long
+) : LeadershipManager {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(PerResourceLeadershipManager::class.java)
+
+        fun getLeaseName(resourceKey: String): String {
+            return "flork-lease-${resourceKey.replace("/", "-")}"
+        }
+    }
+
+    override suspend fun participate(resourceKey: String, callbacks: LeaderCallbacks) {
+        val leaseName = getLeaseName(resourceKey)
+        val leaderElectionConfig = LeadershipManager.getBaseLeaderElectionConfig(leaseName, LeadershipManager.getLeaseLock(k8sClient, leaseName), leaseDurationSeconds)
+                .withLeaderCallbacks(callbacks)
+                .build()
+
+        try {
+            CoroutineLeaderElector(LeadershipManager.getNamespacedClient(k8sClient), leaderElectionConfig).run()
+        } finally {
+            LOG.info("Leader election loop for '{}' has finished.", resourceKey)
+        }
+    }
+
+    override suspend fun cleanUp(resourceKey: String) {
+        val leaseName = getLeaseName(resourceKey)
+
+        val lease = runInterruptible(Dispatchers.IO) {
+            k8sClient.leases()
+                    .inNamespace(k8sClient.namespace)
+                    .withName(leaseName)
+                    .get()
+        }
+
+        val leaseOwnedByMe = lease?.spec?.holderIdentity == RuntimeConstants.POD_NAME
+        if (leaseOwnedByMe) {
+            LOG.info("Waiting 1 lease duration period ({}s) before deleting lease.", leaseDurationSeconds)
+            delay(leaseDurationSeconds * 1000L)
+            try {
+                val flag = runInterruptible(Dispatchers.IO) {
+                    k8sClient.leases()
+                            .inNamespace(k8sClient.namespace)
+                            .withName(leaseName)
+                            .delete()
+                }
+
+                if (flag) {
+                    LOG.info("Lease '{}' supposedly deleted.", leaseName)
+                } else {
+                    LOG.warn("Lease '{}' could not be deleted.", leaseName)
+                }
+            } catch (e: Exception) {
+                LOG.error("Error during lease deletion:", e)
+            }
+        }
+    }
+}
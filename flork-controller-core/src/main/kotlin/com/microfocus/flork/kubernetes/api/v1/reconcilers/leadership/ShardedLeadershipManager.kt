@@ -0,0 +1,338 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.leadership
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.dsl.Namespaceable
+import io.fabric8.kubernetes.client.dsl.base.PatchContext
+import io.fabric8.kubernetes.client.dsl.base.PatchType
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderCallbacks
+import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.LeaderElectionRecord
+import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.LeaseLock
+import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.Lock
+import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.LockException
+import io.fabric8.kubernetes.client.utils.Serialization
+import kotlinx.coroutines.*
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+import java.time.ZonedDateTime
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A fixed number of shard leases, each resource belongs to exactly 1 shard.
+ * The number of lease requests depends on the number of shards and replicas, but not on the number of resources.
+ *
+ * Each replica only competes for a shard immediately if it owns fewer than its fair share of shards,
+ * otherwise it waits an additional lease duration after the shard becomes unclaimed, e.g. because its holder crashed.
+ * A replica that owns fewer than its fair share announces itself on the shards held by others,
+ * and a replica that owns more stops renewing announced shards until it's back at its fair share,
+ * so that shards are rebalanced when a replica joins late.
+ */
+class ShardedLeadershipManager(
+        private val k8sClient: KubernetesClient,
+        private val numShards: Int,
+        replicas: Int,
+        private val leaseDurationSeconds: Long,
+        private val identity: String = RuntimeConstants.POD_NAME
+) : LeadershipManager {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(ShardedLeadershipManager::class.java)
+
+        // "<identity>@<epoch millis>" of the last replica that wanted the shard
+        const val CONTENDER_ANNOTATION = "flork.microfocus.com/contender"
+
+        fun getShardLeaseName(shard: Int): String {
+            return "flork-shard-lease-${RuntimeConstants.TENANT_ID}-$shard"
+        }
+
+        /**
+         * Jump consistent hash (Lamping & Veach), so that few resources move if the number of shards changes.
+         */
+        fun getShard(resourceKey: String, numShards: Int): Int {
+            var key = fnv1a64(resourceKey)
+            var b = -1L
+            var j = 0L
+            while (j < numShards) {
+                b = j
+                key = key * 2862933555777941757L + 1L
+                j = ((b + 1L) * ((1L shl 31).toDouble() / ((key ushr 33) + 1L).toDouble())).toLong()
+            }
+            return b.toInt()
+        }
+
+        private fun fnv1a64(value: String): Long {
+            var hash = -0x340d631b7bdddcdbL
+            for (byte in value.toByteArray(StandardCharsets.UTF_8)) {
+                hash = hash xor (byte.toLong() and 0xffL)
+                hash *= 0x100000001b3L
+            }
+            return hash
+        }
+    }
+
+    private val scope = CoroutineScope(Dispatchers.Default + SupervisorJob() + CoroutineExceptionHandler { _, throwable ->
+        LOG.error("Error during sharded leader election:", throwable)
+    })
+
+    private val fairShare = (numShards + replicas.coerceAtLeast(1) - 1) / replicas.coerceAtLeast(1)
+    private val ownedShards = AtomicInteger(0)
+    private val releasingShards = AtomicInteger(0)
+    private val shards = Array(numShards) { Shard(it) }
+
+    init {
+        LOG.info("Using {} leader election shard(s), fair share per replica is {}.", numShards, fairShare)
+    }
+
+    override suspend fun participate(resourceKey: String, callbacks: LeaderCallbacks) {
+        val shard = shards[getShard(resourceKey, numShards)]
+        LOG.debug("Resource '{}' belongs to shard '{}'.", resourceKey, shard.leaseName)
+        shard.subscribe(callbacks)
+        try {
+            awaitCancellation()
+        } finally {
+            shard.unsubscribe(callbacks)
+            LOG.info("Leader election loop for '{}' has finished.", resourceKey)
+        }
+    }
+
+    override suspend fun cleanUp(resourceKey: String) {
+        // nop, shard leases outlive resources
+    }
+
+    fun stop() {
+        scope.cancel()
+    }
+
+    internal fun getOwnedShards(): Int = ownedShards.get()
+
+    private inner class Shard(index: Int) {
+        val leaseName = getShardLeaseName(index)
+
+        private val started = AtomicBoolean(false)
+
+        // guarded by this
+        private val subscribers = LinkedHashSet<LeaderCallbacks>()
+        private var leading = false
+        private var leaderId: String? = null
+
+        fun subscribe(callbacks: LeaderCallbacks) {
+            synchronized(this) {
+                subscribers.add(callbacks)
+                val currentLeader = leaderId
+                if (leading) {
+                    notify(callbacks) { it.onStartLeading() }
+                } else if (currentLeader != null) {
+                    notify(callbacks) { it.onNewLeader(currentLeader) }
+                }
+            }
+
+            if (started.compareAndSet(false, true)) {
+                scope.launch { electionLoop() }
+            }
+        }
+
+        fun unsubscribe(callbacks: LeaderCallbacks) {
+            synchronized(this) {
+                if (subscribers.remove(callbacks) && leading) {
+                    notify(callbacks) { it.onStopLeading() }
+                }
+            }
+        }
+
+        private suspend fun electionLoop() {
+            val lock = FairShareLeaseLock(leaseName, ::isLeading)
+            val leaderElectionConfig = LeadershipManager.getBaseLeaderElectionConfig(leaseName, lock, leaseDurationSeconds)
+                    .withLeaderCallbacks(LeaderCallbacks(::onStartLeading, ::onStopLeading, ::onNewLeader))
+                    .build()
+
+            val namespacedClient = LeadershipManager.getNamespacedClient(k8sClient)
+            while (currentCoroutineContext().isActive) {
+                try {
+                    CoroutineLeaderElector(namespacedClient, leaderElectionConfig).run()
+                    LOG.info("Leader election loop for shard '{}' has finished, re-joining.", leaseName)
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    LOG.error("Leader election loop for shard '{}' failed, re-joining:", leaseName, e)
+                    delay(leaderElectionConfig.retryPeriod.toMillis())
+                }
+            }
+        }
+
+        @Synchronized
+        fun isLeading(): Boolean = leading
+
+        @Synchronized
+        private fun onStartLeading() {
+            LOG.info("I'm the leader of shard '{}' now ({}).", leaseName, identity)
+            if (!leading) {
+                leading = true
+                ownedShards.incrementAndGet()
+            }
+            subscribers.forEach { callbacks -> notify(callbacks) { it.onStartLeading() } }
+        }
+
+        @Synchronized
+        private fun onStopLeading() {
+            LOG.info("Pod '{}' lost leadership of shard '{}'.", identity, leaseName)
+            if (leading) {
+                leading = false
+                ownedShards.decrementAndGet()
+            }
+            subscribers.forEach { callbacks -> notify(callbacks) { it.onStopLeading() } }
+        }
+
+        @Synchronized
+        private fun onNewLeader(newLeaderId: String) {
+            leaderId = newLeaderId
+            subscribers.forEach { callbacks -> notify(callbacks) { it.onNewLeader(newLeaderId) } }
+        }
+
+        private fun notify(callbacks: LeaderCallbacks, action: (LeaderCallbacks) -> Unit) {
+            try {
+                action(callbacks)
+            } catch (e: Exception) {
+                LOG.error("Leader callback for shard '{}' failed:", leaseName, e)
+            }
+        }
+    }
+
+    private inner class FairShareLeaseLock(
+            private val leaseName: String,
+            private val isLeading: () -> Boolean
+    ) : Lock {
+        private val delegate = LeaseLock(k8sClient.namespace, leaseName, identity)
+
+        // only accessed from the leader elector's thread
+        private var lastObserved: LeaderElectionRecord? = null
+        private var missingSince: ZonedDateTime? = null
+        private var contendedAt: ZonedDateTime? = null
+        private var releasing = false
+
+        override fun <C> get(client: C): LeaderElectionRecord? where C : Namespaceable<C>, C : KubernetesClient {
+            val lease = client.inNamespace(k8sClient.namespace).leases().withName(leaseName).get()
+            val record = lease?.spec?.let { spec ->
+                LeaderElectionRecord(spec.holderIdentity, Duration.ofSeconds(spec.leaseDurationSeconds.toLong()),
+                        spec.acquireTime, spec.renewTime, spec.leaseTransitions ?: 0).also { it.version = lease.metadata.resourceVersion }
+            }
+
+            lastObserved = record
+            missingSince = if (record == null) missingSince ?: now() else null
+            val contender = lease?.metadata?.annotations?.get(CONTENDER_ANNOTATION)?.split('@')
+            contendedAt = contender?.takeIf { it.size == 2 && it[0] != identity() }?.get(1)?.toLongOrNull()?.let {
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(it), ZoneOffset.UTC)
+            }
+
+            if (record == null || record.holderIdentity != identity()) {
+                stopReleasing()
+            }
+            if (record != null && record.holderIdentity != identity() && ownedShards.get() < fairShare) {
+                announceContender(client, record, contender?.getOrNull(1)?.toLongOrNull())
+            }
+            return record
+        }
+
+        override fun <C> create(client: C, leaderElectionRecord: LeaderElectionRecord) where C : Namespaceable<C>, C : KubernetesClient {
+            checkFairShare(missingSince)
+            delegate.create(client, leaderElectionRecord)
+        }
+
+        override fun <C> update(client: C, leaderElectionRecord: LeaderElectionRecord) where C : Namespaceable<C>, C : KubernetesClient {
+            val observed = lastObserved
+            if (observed != null && observed.holderIdentity != identity()) {
+                checkFairShare(observed.renewTime.plus(observed.leaseDuration))
+            } else if (observed != null) {
+                checkExcessShare()
+            }
+            delegate.update(client, leaderElectionRecord)
+        }
+
+        override fun identity(): String = delegate.identity()
+
+        override fun describe(): String = delegate.describe()
+
+        private fun checkFairShare(unclaimedSince: ZonedDateTime?) {
+            if (unclaimedSince == null || ownedShards.get() < fairShare) {
+                return
+            }
+            if (now().isBefore(unclaimedSince.plusSeconds(leaseDurationSeconds))) {
+                throw LockException("Already owning fair share of $fairShare shard(s), leaving ${delegate.describe()} to other replicas for now.")
+            }
+        }
+
+        // stops renewing the shard while another replica wants it and this one owns more than its fair share
+        private fun checkExcessShare() {
+            val contended = contendedAt?.let { now().isBefore(it.plusSeconds(leaseDurationSeconds)) } == true
+            if (!contended) {
+                stopReleasing()
+                return
+            }
+
+            if (!releasing) {
+                // shards that are already being released don't count, so that only the excess ones are released
+                val owned = ownedShards.get() + if (isLeading()) 0 else 1
+                while (true) {
+                    val alreadyReleasing = releasingShards.get()
+                    if (owned - alreadyReleasing <= fairShare) {
+                        return
+                    }
+                    if (releasingShards.compareAndSet(alreadyReleasing, alreadyReleasing + 1)) {
+                        break
+                    }
+                }
+                releasing = true
+                LOG.info("Owning more than fair share of {} shard(s), releasing {} to other replicas.", fairShare, delegate.describe())
+            }
+            throw LockException("Releasing ${delegate.describe()} to other replicas.")
+        }
+
+        private fun stopReleasing() {
+            if (releasing) {
+                releasing = false
+                releasingShards.decrementAndGet()
+            }
+        }
+
+        private fun <C> announceContender(client: C, record: LeaderElectionRecord, lastAnnouncedMillis: Long?) where C : Namespaceable<C>, C : KubernetesClient {
+            val now = now()
+            if (!now.isBefore(record.renewTime.plus(record.leaseDuration))) {
+                return // expired, the elector takes over right away
+            }
+            if (lastAnnouncedMillis != null && now.toInstant().toEpochMilli() - lastAnnouncedMillis < leaseDurationSeconds * 500L) {
+                return
+            }
+
+            val patch = mapOf("metadata" to mapOf("annotations" to mapOf(CONTENDER_ANNOTATION to "${identity()}@${now.toInstant().toEpochMilli()}")))
+            try {
+                client.inNamespace(k8sClient.namespace)
+                        .leases()
+                        .withName(leaseName)
+                        .patch(PatchContext.of(PatchType.JSON_MERGE), Serialization.asJson(patch))
+            } catch (e: Exception) {
+                LOG.debug("Could not announce contender for {}: {}", delegate.describe(), e.message)
+            }
+        }
+
+        private fun now(): ZonedDateTime = ZonedDateTime.now(ZoneOffset.UTC)
+    }
+}
@@ -17,24 +17,26 @@
 package com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers
 
 import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import com.microfocus.flork.kubernetes.api.utils.LeadershipEvent
+import com.microfocus.flork.kubernetes.api.utils.describe
+import com.microfocus.flork.kubernetes.api.v1.model.FlorkPhase
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.leadership.LeadershipManager
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.DefaultFlinkResourceOperations
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkClusterClientCache
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkDeploymentInformers
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkResourceDeploymentMonitor
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkResourceOperations
-import io.fabric8.kubernetes.api.model.apps.Deployment
 import io.fabric8.kubernetes.client.CustomResource
 import io.fabric8.kubernetes.client.KubernetesClient
-import io.fabric8.kubernetes.client.NamespacedKubernetesClient
 import io.fabric8.kubernetes.client.extended.leaderelection.LeaderCallbacks
-import io.fabric8.kubernetes.client.extended.leaderelection.LeaderElectionConfigBuilder
-import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.LeaseLock
 import io.fabric8.kubernetes.client.informers.cache.Lister
 import kotlinx.coroutines.*
 import kotlinx.coroutines.channels.BufferOverflow
 import kotlinx.coroutines.channels.Channel
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
-import java.time.Duration
-import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicReference
 
@@ -51,22 +53,31 @@ abstract class AbstractReconcilerPhaser<Spec, Status, T : CustomResource<Spec, S
 
         const val LEASE_DURATION_SECONDS = 15L
 
-        private fun getBaseLeaderElectionConfig(k8sClient: KubernetesClient, jobKey: String, durationSeconds: Long): LeaderElectionConfigBuilder {
-            val sanitizedKey = getLeaseKey(jobKey)
-            val deadlineMillis = durationSeconds * 2_000L / 3L
-            return LeaderElectionConfigBuilder()
-                    .withName(sanitizedKey)
-                    .withLock(LeaseLock(k8sClient.namespace, sanitizedKey, RuntimeConstants.POD_NAME))
-                    .withLeaseDuration(Duration.ofSeconds(durationSeconds))
-                    .withRenewDeadline(Duration.ofMillis(deadlineMillis))
-                    .withRetryPeriod(Duration.ofMillis(deadlineMillis / 4L))
-        }
-
         fun getLeaseKey(jobKey: String): String {
-            return "flork-lease-${jobKey.replace("/", "-")}"
+            return LeadershipManager.getLeaseName(jobKey)
         }
     }
 
+    /**
+     * Point-in-time view of a phaser for diagnostics, fields that don't apply to a kind of resource are null.
+     */
+    data class Snapshot(
+            val key: String,
+            val kind: String,
+            val active: Boolean,
+            val leading: Boolean,
+            val observedGeneration: Long,
+            val phase: FlorkPhase?,
+            val millisInPhase: Long,
+            val channelBacklog: Int,
+            val lastError: String?,
+            val failures: Int? = null,
+            val setAsDeployedActive: Boolean? = null,
+            val setAsCompletedActive: Boolean? = null
+    )
+
+    private class PhaseObservation(val phase: FlorkPhase?, val sinceNanos: Long)
+
     val channel = Channel<T>(capacity = 1, onBufferOverflow = BufferOverflow.DROP_OLDEST)
 
     protected val leading = AtomicBoolean(false)
@@ -80,86 +91,60 @@ abstract class AbstractReconcilerPhaser<Spec, Status, T : CustomResource<Spec, S
 
     protected val deploymentMonitor: FlinkResourceDeploymentMonitor
 
+    protected val clientCache = FlinkClusterClientCache(jobKey)
+
+    @Volatile
     protected var observedGeneration = 0L
 
-    private val leaderElector by lazy {
-        val leaderElectionConfig = getBaseLeaderElectionConfig(k8sClient, jobKey, leaseDurationSeconds)
-                .withLeaderCallbacks(callbacks)
-                .build()
+    private val phaseObservation = AtomicReference(PhaseObservation(null, System.nanoTime()))
 
-        k8sClient.leaderElector<NamespacedKubernetesClient>()
-                .withConfig(leaderElectionConfig)
-                .build()
+    protected val lastError = AtomicReference<String?>()
+
+    protected open val leadershipManager: LeadershipManager by lazy {
+        LeadershipManager.get(k8sClient, leaseDurationSeconds)
     }
 
     private val mainCoroutine: Job
 
+    private val kind = FlorkMetrics.getKind(resourceClass)
+
     init {
         val jobKeyParts = jobKey.split("/")
         deploymentMonitor = FlinkResourceDeploymentMonitor(jobKeyParts[0], jobKeyParts[1])
 
         mainCoroutine = outerScope.launch(start = CoroutineStart.LAZY) {
             phaserScope.set(this)
-            setUpDeploymentMonitor(k8sClient, jobKeyParts[0], jobKeyParts[1])
-            launch {
-                runInterruptible {
-                    try {
-                        leaderElector.run()
-                    } finally {
-                        LOG.info("Leader election loop for '{}' has finished.", jobKey)
-                    }
+            FlorkMetrics.phaserStarted(kind)
+            try {
+                setUpDeploymentMonitor(jobKeyParts[0], jobKeyParts[1])
+                launch {
+                    leadershipManager.participate(jobKey, callbacks)
                 }
+                loop()
+            } finally {
+                FlinkDeploymentInformers.unregister(jobKeyParts[0], jobKeyParts[1], deploymentMonitor)
+                clientCache.close()
+                if (leading.getAndSet(false)) {
+                    FlorkMetrics.leadershipReleased(kind)
+                }
+                FlorkMetrics.phaserStopped(kind)
             }
-            loop()
         }
     }
 
-    private suspend fun setUpDeploymentMonitor(k8sClient: KubernetesClient, namespace: String, name: String) = withContext(Dispatchers.IO) {
-        LOG.info("Starting deployment watch for resource '{}'.", jobKey)
+    protected open suspend fun setUpDeploymentMonitor(namespace: String, name: String): Unit = withContext(Dispatchers.IO) {
+        LOG.info("Registering deployment monitor for resource '{}'.", jobKey)
         runInterruptible {
-            k8sClient.resources(Deployment::class.java)
-                    .inNamespace(namespace)
-                    .withName(name)
-                    .inform(deploymentMonitor)
+            FlinkDeploymentInformers.register(k8sClient, namespace, name, deploymentMonitor)
         }
     }
 
     fun start(finalizerScope: CoroutineScope, resourceKey: String): Boolean {
         val ans = mainCoroutine.start()
         if (ans) {
-            val leaseKey = getLeaseKey(resourceKey)
-
             finalizerScope.launch {
                 mainCoroutine.join()
-
-                val lease = runInterruptible {
-                    k8sClient.leases()
-                            .inNamespace(k8sClient.namespace)
-                            .withName(leaseKey)
-                            .get()
-                }
-
-                val leaseOwnedByMe = lease?.spec?.holderIdentity == RuntimeConstants.POD_NAME
-                if (leaseOwnedByMe) {
-                    LOG.info("Waiting 1 lease duration period ({}s) before deleting lease.", leaseDurationSeconds)
-                    delay(leaseDurationSeconds * 1000L)
-                    try {
-                        val flag = runInterruptible {
-                            k8sClient.leases()
-                                    .inNamespace(k8sClient.namespace)
-                                    .withName(leaseKey)
-                                    .delete()
-                        }
-
-                        if (flag) {
-                            LOG.info("Lease '{}' supposedly deleted.", leaseKey)
-                        } else {
-                            LOG.warn("Lease '{}' could not be deleted.", leaseKey)
-                        }
-                    } catch (e: Exception) {
-                        LOG.error("Error during lease deletion:", e)
-                    }
-                }
+                leadershipManager.cleanUp(resourceKey)
             }
         }
         return ans
@@ -167,6 +152,11 @@ abstract class AbstractReconcilerPhaser<Spec, Status, T : CustomResource<Spec, S
 
     fun isActive() = mainCoroutine.isActive
 
+    /**
+     * Whether this replica holds the resource's lease, as last notified by the leader elector.
+     */
+    fun isLeading() = leading.get()
+
     @Synchronized
     fun cancel() {
         try {
@@ -178,37 +168,77 @@ abstract class AbstractReconcilerPhaser<Spec, Status, T : CustomResource<Spec, S
 
     protected abstract suspend fun loop()
 
+    /**
+     * Keeps track of how long the resource has been in its current phase, as far as this phaser knows.
+     */
+    protected fun observePhase(phase: FlorkPhase?) {
+        phaseObservation.updateAndGet { old ->
+            if (old.phase == phase) old else PhaseObservation(phase, System.nanoTime())
+        }
+    }
+
+    open fun getSnapshot(): Snapshot {
+        val observation = phaseObservation.get()
+        return Snapshot(
+                jobKey,
+                kind,
+                isActive(),
+                leading.get(),
+                observedGeneration,
+                observation.phase,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - observation.sinceNanos),
+                if (channel.isEmpty) 0 else 1,
+                lastError.get()
+        )
+    }
+
     protected open fun onStopLeading() {
         // nop by default
     }
+
+    private fun recordLeadership(change: String, leader: String?) {
+        LeadershipEvent().describe(jobKey, observedGeneration, null).apply {
+            this.change = change
+            this.leader = leader
+        }.commit()
+    }
     
     internal inner class FlinkResourceLeaderCallbacks : LeaderCallbacks(
             {
                 LOG.info("I'm the leader of '{}' now ({}).", jobKey, RuntimeConstants.POD_NAME)
-                leading.set(true)
-                callbacks.initialReadinessLatch.countDown()
+                if (!leading.getAndSet(true)) {
+                    FlorkMetrics.leadershipAcquired(kind)
+                }
+                recordLeadership("started", RuntimeConstants.POD_NAME)
+                callbacks.initialReadiness.complete(Unit)
             },
             {
                 LOG.info("Pod '{}' lost leadership of '{}'.", RuntimeConstants.POD_NAME, jobKey)
-                leading.set(false)
+                if (leading.getAndSet(false)) {
+                    FlorkMetrics.leadershipReleased(kind)
+                }
+                recordLeadership("stopped", null)
                 try {
                     onStopLeading()
                 } finally {
                     callbacks.leaderCoroutine.getAndSet(null)?.cancel()
                 }
-                callbacks.initialReadinessLatch.countDown()
+                callbacks.initialReadiness.complete(Unit)
             },
             { newLeaderId ->
                 if (newLeaderId == RuntimeConstants.POD_NAME) {
                     LOG.debug("I'm the leader but onNewLeader was called, waiting for onStartLeading.")
                 } else {
                     LOG.info("Pod '{}' is taking over for '{}'.", newLeaderId, jobKey)
-                    leading.set(false)
-                    callbacks.initialReadinessLatch.countDown()
+                    recordLeadership("taken over", newLeaderId)
+                    if (leading.getAndSet(false)) {
+                        FlorkMetrics.leadershipReleased(kind)
+                    }
+                    callbacks.initialReadiness.complete(Unit)
                 }
             }
     ) {
-        val initialReadinessLatch = CountDownLatch(1)
+        val initialReadiness = CompletableDeferred<Unit>()
         val leaderCoroutine = AtomicReference<Job?>()
     }
 }
@@ -16,16 +16,20 @@
 
 package com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers
 
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import com.microfocus.flork.kubernetes.api.utils.PhaserMessageEvent
+import com.microfocus.flork.kubernetes.api.utils.describe
 import com.microfocus.flork.kubernetes.api.v1.model.*
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.CoroutineFlinkJobReconciler
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.phases.FlinkJobCreatePhase
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.phases.FlinkJobShutdownPhase
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkHighAvailabilityCleanup
 import io.fabric8.kubernetes.client.KubernetesClient
 import io.fabric8.kubernetes.client.informers.cache.Lister
+import io.micrometer.core.instrument.Tags
 import kotlinx.coroutines.*
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
-import java.util.concurrent.CountDownLatch
 import java.util.concurrent.atomic.AtomicReference
 
 open class CoroutineFlinkJobReconcilerPhaser internal constructor(
@@ -55,13 +59,14 @@ open class CoroutineFlinkJobReconcilerPhaser internal constructor(
 
     private val setAsDeployedCoroutine = AtomicReference<Job?>()
     private val setAsCompletedCoroutine = AtomicReference<Job?>()
+    private val retryCoroutine = AtomicReference<Job?>()
 
     fun wasGenerationObserved(flinkJob: FlinkJobCustomResource): Boolean {
         return flinkJob.metadata.generation == observedGeneration && flinkJob.metadata.generation == flinkJob.status.generationDuringLastTransition
     }
 
     override suspend fun loop() = withContext(Dispatchers.IO) {
-        runInterruptible { callbacks.initialReadinessLatch.await() }
+        callbacks.initialReadiness.await()
         LOG.info("Leader election loop for '{}' has started.", jobKey)
 
         // only 1 channel consumer means a new message won't be consumed until phase transition completes
@@ -71,18 +76,57 @@ open class CoroutineFlinkJobReconcilerPhaser internal constructor(
                     jobKey, flinkJob.metadata.generation, observedGeneration, flinkJob.status)
 
             val currentObservedGeneration = observedGeneration
+            observePhase(flinkJob.status.florkPhase)
             try {
-                supervisorScope {
-                    reconcileIfNecessary(flinkJob)
+                PhaserMessageEvent().describe(jobKey, flinkJob.metadata.generation, flinkJob.status.florkPhase).record {
+                    supervisorScope {
+                        reconcileIfNecessary(flinkJob)
+                    }
                 }
+                retryCoroutine.getAndSet(null)?.cancel()
+                CoroutineFlinkJobReconciler.BACKOFF.reset(jobKey)
             } catch (e: InterruptedException) {
                 Thread.currentThread().interrupt()
                 throw e
+            } catch (e: CancellationException) {
+                // the phaser itself being cancelled, e.g. because the resource was deleted, is not a failure
+                ensureActive()
+                onReconciliationFailure(flinkJob, currentObservedGeneration, e)
+            } catch (e: Exception) {
+                onReconciliationFailure(flinkJob, currentObservedGeneration, e)
+            }
+        }
+    }
+
+    private fun onReconciliationFailure(flinkJob: FlinkJobCustomResource, previousObservedGeneration: Long, e: Exception) {
+        observedGeneration = previousObservedGeneration
+        lastError.set(e.toString())
+        LOG.error("Unexpected exception:", e)
+        scheduleRetry(flinkJob)
+    }
+
+    // instead of waiting for the next resync
+    private fun scheduleRetry(flinkJob: FlinkJobCustomResource) {
+        val delayMillis = CoroutineFlinkJobReconciler.BACKOFF.next(jobKey)
+        LOG.info("Retrying reconciliation of '{}' in {}ms (failures={}).", jobKey, delayMillis,
+                CoroutineFlinkJobReconciler.BACKOFF.getFailures(jobKey))
+
+        val coroutine = phaserScope.get().launch(start = CoroutineStart.LAZY) {
+            delay(delayMillis)
+            try {
+                // if something was received in the meantime, it's newer anyway
+                if (channel.isEmpty) {
+                    channel.send(crOperations.reloadResource(flinkJob))
+                }
+            } catch (e: CancellationException) {
+                throw e
             } catch (e: Exception) {
-                observedGeneration = currentObservedGeneration
-                LOG.error("Unexpected exception:", e)
+                // must not fail phaserScope, the next resync will try again
+                LOG.error("Could not retry reconciliation of '{}':", jobKey, e)
             }
         }
+        retryCoroutine.getAndSet(coroutine)?.cancel()
+        coroutine.start()
     }
 
     private suspend fun reconcileIfNecessary(flinkJob: FlinkJobCustomResource) = coroutineScope {
@@ -128,6 +172,8 @@ open class CoroutineFlinkJobReconcilerPhaser internal constructor(
                     }
                     else -> {
                         LOG.warn("Kubernetes deployment for '{}' with phase DEPLOYED no longer found.", jobKey)
+                        flinkJob.status.addTransition(FlinkJobTransition.endingNow(flinkJob.status.florkPhase, FlorkPhase.FAILED,
+                                flinkJob.metadata.generation, null))
                         flinkJob.status.florkPhase = FlorkPhase.FAILED
                         patchStatus(flinkJob)
                         // won't delete CR with FAILED phase even if its policy says so
@@ -189,7 +235,7 @@ open class CoroutineFlinkJobReconcilerPhaser internal constructor(
     }
 
     private suspend fun executeCreationPhase(flinkJob: FlinkJobCustomResource) = coroutineScope {
-        val phase = FlinkJobCreatePhase(jobKey, deploymentMonitor, flinkJob, crOperations, setAsDeployedCoroutine)
+        val phase = FlinkJobCreatePhase(k8sClient, jobKey, deploymentMonitor, clientCache, flinkJob, crOperations, setAsDeployedCoroutine)
         phase.performInitialDeployment(phaserScope.get())
     }
 
@@ -199,24 +245,12 @@ open class CoroutineFlinkJobReconcilerPhaser internal constructor(
         setAsCompletedCoroutine.getAndSet(coroutine)?.cancel()
     }
 
+    // the time until the job is running again is recorded separately as the DEPLOYING to DEPLOYED transition
     private suspend fun executeRedeploymentPhase(flinkJob: FlinkJobCustomResource) = coroutineScope {
         try {
-            // update status with potential savepoint path, but only update that
-            flinkJob.status = executeShutdownPhase(flinkJob).status
-            // block until we get our own update to be sure that channel doesn't buffer old statuses at all
-            while (channel.receive().status.florkPhase != FlorkPhase.COMPLETED) {
-                LOG.trace("Status update for redeployment shutdown of '{}' hasn't been received yet.", jobKey)
-            }
-            runInterruptible {
-                CoroutineFlinkJobReconciler.maybeCleanHighAvailability(k8sClient, flinkJob, jobKey)
+            FlorkMetrics.time(FlorkMetrics.REDEPLOYMENT_DURATION, Tags.empty()) {
+                redeploy(flinkJob)
             }
-
-            executeCreationPhase(flinkJob)
-            // similar as above
-            while (channel.receive().status.florkPhase != FlorkPhase.DEPLOYING) {
-                LOG.trace("Status update for redeployment creation of '{}' hasn't been received yet.", jobKey)
-            }
-            executeCompletionPhase(flinkJob)
         } catch (t: Throwable) {
             launch(NonCancellable) {
                 LOG.error("Could not re-deploy Flink cluster for '{}' cleanly:", jobKey, t)
@@ -225,13 +259,36 @@ open class CoroutineFlinkJobReconcilerPhaser internal constructor(
         }
     }
 
+    private suspend fun redeploy(flinkJob: FlinkJobCustomResource) = coroutineScope {
+        // update status with potential savepoint path, but only update that
+        flinkJob.status = executeShutdownPhase(flinkJob).status
+        // block until we get our own update to be sure that channel doesn't buffer old statuses at all
+        while (receiveStatusUpdate() != FlorkPhase.COMPLETED) {
+            LOG.trace("Status update for redeployment shutdown of '{}' hasn't been received yet.", jobKey)
+        }
+        FlinkHighAvailabilityCleanup.cleanIfEnabled(k8sClient, flinkJob, jobKey)
+
+        executeCreationPhase(flinkJob)
+        // similar as above
+        while (receiveStatusUpdate() != FlorkPhase.DEPLOYING) {
+            LOG.trace("Status update for redeployment creation of '{}' hasn't been received yet.", jobKey)
+        }
+        executeCompletionPhase(flinkJob)
+    }
+
+    private suspend fun receiveStatusUpdate(): FlorkPhase? {
+        return channel.receive().status.florkPhase.also { observePhase(it) }
+    }
+
     private suspend fun executeShutdownPhase(flinkJob: FlinkJobCustomResource): FlinkJobCustomResource = coroutineScope {
         LOG.info("Shutting down Flink cluster for '{}'.", jobKey)
+        val startNanos = System.nanoTime()
+        val previousPhase = flinkJob.status.florkPhase
         setAsCompletedCoroutine.getAndSet(null)?.cancel()
 
         val deploymentExisted = deploymentMonitor.addedFlag.get()
 
-        val phase = FlinkJobShutdownPhase(k8sClient, jobKey, flinkJob)
+        val phase = FlinkJobShutdownPhase(k8sClient, jobKey, clientCache, flinkJob)
         val savepointPath = try {
             supervisorScope {
                 phase.shutDownCleanly()
@@ -243,21 +300,26 @@ open class CoroutineFlinkJobReconcilerPhaser internal constructor(
 
         // reset for new deployment
         if (deploymentExisted) {
-            runInterruptible { deploymentMonitor.deletionLatch.get().await() }
-            deploymentMonitor.deletionLatch.set(CountDownLatch(1))
+            deploymentMonitor.deletion.get().await()
+            deploymentMonitor.deletion.set(CompletableDeferred())
             LOG.info("Flink cluster for '{}' shut down cleanly.", jobKey)
         }
 
+        flinkJob.status.addTransition(FlinkJobTransition.endingNow(previousPhase, FlorkPhase.COMPLETED, observedGeneration,
+                startNanos, phase.savepointMillis))
         flinkJob.status.florkPhase = FlorkPhase.COMPLETED
         if (savepointPath != null) {
             flinkJob.status.knownSavepointPath = savepointPath
         }
 
-        return@coroutineScope patchStatus(flinkJob, false)
+        return@coroutineScope patchStatus(flinkJob, false).also {
+            FlorkMetrics.recordTransition(previousPhase, FlorkPhase.COMPLETED, startNanos)
+        }
     }
 
     private suspend fun awaitDeploymentDeletionAndComplete(flinkJob: FlinkJobCustomResource) = coroutineScope {
-        runInterruptible { deploymentMonitor.deletionLatch.get().await() }
+        deploymentMonitor.deletion.get().await()
+        clientCache.invalidate()
         LOG.info("Flink job '{}' has either finished, failed, or been cancelled.", jobKey)
 
         setAsDeployedCoroutine.getAndSet(null)?.cancel()
@@ -267,11 +329,11 @@ open class CoroutineFlinkJobReconcilerPhaser internal constructor(
             crOperations.delete(flinkJob)
         } else {
             val patchedFlinkJob = crOperations.reloadResource(flinkJob)
+            patchedFlinkJob.status.addTransition(FlinkJobTransition.endingNow(patchedFlinkJob.status.florkPhase, FlorkPhase.COMPLETED,
+                    observedGeneration, null))
             patchedFlinkJob.status.florkPhase = FlorkPhase.COMPLETED
             patchStatus(patchedFlinkJob)
-            runInterruptible {
-                CoroutineFlinkJobReconciler.maybeCleanHighAvailability(k8sClient, flinkJob, jobKey)
-            }
+            FlinkHighAvailabilityCleanup.cleanIfEnabled(k8sClient, flinkJob, jobKey)
         }
 
         launch(NonCancellable) {
@@ -284,7 +346,17 @@ open class CoroutineFlinkJobReconcilerPhaser internal constructor(
         if (updateGeneration) {
             flinkJob.status.generationDuringLastTransition = observedGeneration
         }
-        crOperations.patchStatus(flinkJob)
+        crOperations.patchStatus(flinkJob).also {
+            observePhase(it.status.florkPhase)
+        }
+    }
+
+    override fun getSnapshot(): Snapshot {
+        return super.getSnapshot().copy(
+                failures = CoroutineFlinkJobReconciler.BACKOFF.getFailures(jobKey),
+                setAsDeployedActive = setAsDeployedCoroutine.get()?.isActive == true,
+                setAsCompletedActive = setAsCompletedCoroutine.get()?.isActive == true
+        )
     }
 
     override fun onStopLeading() {
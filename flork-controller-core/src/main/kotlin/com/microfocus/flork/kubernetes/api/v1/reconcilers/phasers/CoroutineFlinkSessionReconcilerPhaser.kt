@@ -57,13 +57,14 @@ class CoroutineFlinkSessionReconcilerPhaser internal constructor(
     }
 
     override suspend fun loop() = withContext(Dispatchers.IO) {
-        runInterruptible { callbacks.initialReadinessLatch.await() }
+        callbacks.initialReadiness.await()
         LOG.info("Leader election loop for session '{}' has started.", jobKey)
 
         for (flinkSession in channel) {
             LOG.info("Processing resource '{}' with generation={}, previous known generation={}, status={}",
                     jobKey, flinkSession.metadata.generation, observedGeneration, flinkSession.status)
 
+            observePhase(flinkSession.status.florkPhase)
             reconcileIfLeading(flinkSession)
         }
     }
@@ -127,6 +128,8 @@ class CoroutineFlinkSessionReconcilerPhaser internal constructor(
         if (updateGeneration) {
             flinkSession.status.generationDuringLastTransition = observedGeneration
         }
-        crOperations.patchStatus(flinkSession)
+        crOperations.patchStatus(flinkSession).also {
+            observePhase(it.status.florkPhase)
+        }
     }
 }
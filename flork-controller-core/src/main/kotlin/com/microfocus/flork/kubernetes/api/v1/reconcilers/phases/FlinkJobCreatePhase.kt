@@ -16,62 +16,76 @@
 
 package com.microfocus.flork.kubernetes.api.v1.reconcilers.phases
 
+import com.microfocus.flork.kubernetes.api.utils.ClusterDeploymentEvent
 import com.microfocus.flork.kubernetes.api.utils.FlinkApplicationClusterDeployer
-import com.microfocus.flork.kubernetes.api.utils.FlinkConfUtils
-import com.microfocus.flork.kubernetes.api.utils.FlorkUtils
+import com.microfocus.flork.kubernetes.api.utils.FlinkConfRenderCache
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import com.microfocus.flork.kubernetes.api.utils.InitialDeploymentEvent
+import com.microfocus.flork.kubernetes.api.utils.describe
 import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobTransition
 import com.microfocus.flork.kubernetes.api.v1.model.FlorkPhase
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkClusterClientCache
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkJobManagerReadiness
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkResourceDeploymentMonitor
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkResourceOperations
+import io.fabric8.kubernetes.client.KubernetesClient
 import kotlinx.coroutines.*
-import kotlinx.coroutines.future.await
 import org.apache.flink.api.common.JobStatus
 import org.apache.flink.client.deployment.ClusterDeploymentException
-import org.apache.flink.client.program.ClusterClient
 import org.apache.flink.configuration.Configuration
-import org.apache.flink.configuration.GlobalConfiguration
 import org.apache.flink.configuration.IllegalConfigurationException
 import org.apache.flink.configuration.SecurityOptions
 import org.apache.flink.runtime.jobgraph.SavepointConfigOptions
 import org.slf4j.LoggerFactory
-import java.nio.file.Path
-import java.util.concurrent.CountDownLatch
-import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicReference
-import kotlin.io.path.createTempDirectory
 
 class FlinkJobCreatePhase(
+    private val k8sClient: KubernetesClient,
     private val jobKey: String,
     private val deploymentMonitor: FlinkResourceDeploymentMonitor,
+    private val clientCache: FlinkClusterClientCache,
     private val flinkJob: FlinkJobCustomResource,
     private val crOperations: FlinkResourceOperations<*, *, FlinkJobCustomResource>,
     private val setAsDeployedCoroutine: AtomicReference<Job?>
 ) {
     companion object {
         private val LOG = LoggerFactory.getLogger(FlinkJobCreatePhase::class.java)
+
+        // if readiness isn't detected by then, job status is polled anyway
+        private const val JOB_MANAGER_READINESS_TIMEOUT_MILLIS = 300_000L
+
+        private const val MIN_POLL_MILLIS = 250L
+        private const val MAX_POLL_MILLIS = 5_000L
     }
     
     private val observedGeneration = flinkJob.metadata.generation
 
+    // a phase instance is only used for 1 deployment
+    private val startNanos = System.nanoTime()
+
     suspend fun performInitialDeployment(backgroundTaskScope: CoroutineScope) = withContext(Dispatchers.IO) {
         LOG.info("Preparing deployment of '{}'.", jobKey)
-        val tempConfPath = runInterruptible {
-            createTempDirectory(prefix = jobKey.replace("/", "_") + "_")
-        }
-
-        try {
-            return@withContext performInitialDeployment(backgroundTaskScope, tempConfPath)
-        } finally {
-            FlinkConfUtils.cleanFiles(tempConfPath)
+        val event = InitialDeploymentEvent().describe(jobKey, observedGeneration, flinkJob.status.florkPhase)
+        event.record {
+            FlorkMetrics.timePhase("create") {
+                val renderedConf = FlinkConfRenderCache.acquire(flinkJob)
+
+                try {
+                    performInitialDeployment(backgroundTaskScope, renderedConf)
+                } finally {
+                    FlinkConfRenderCache.release(renderedConf)
+                }
+            }
         }
     }
 
-    private suspend fun performInitialDeployment(backgroundTaskScope: CoroutineScope, confPath: Path) = coroutineScope {
-        FlinkConfUtils.prepareConfFilesFromSpec(flinkJob, confPath)
-
-        val flinkConfig = runInterruptible {
-            GlobalConfiguration.loadConfiguration(confPath.toString())
-        }
+    private suspend fun performInitialDeployment(
+            backgroundTaskScope: CoroutineScope,
+            renderedConf: FlinkConfRenderCache.RenderedConf
+    ) = coroutineScope {
+        val flinkConfig = renderedConf.getFlinkConfig()
+        val previousPhase = flinkJob.status.florkPhase
 
         flinkJob.status.knownSavepointPath?.let { sp ->
             flinkConfig.set(SavepointConfigOptions.SAVEPOINT_PATH, sp)
@@ -81,18 +95,16 @@ class FlinkJobCreatePhase(
 
         patchStatus(crOperations.reloadResource(flinkJob).apply {
             status.florkPhase = FlorkPhase.DEPLOYING
+            status.addTransition(FlinkJobTransition.endingNow(previousPhase, FlorkPhase.DEPLOYING, observedGeneration, startNanos))
         })
+        FlorkMetrics.recordTransition(previousPhase, FlorkPhase.DEPLOYING, startNanos)
 
+        val deployingNanos = System.nanoTime()
         val backgroundCoroutine = backgroundTaskScope.launch {
             supervisorScope {
-                val factory = FlinkApplicationClusterDeployer.getClusterClientFactory(flinkConfig)
-                val flinkClusterDescriptor = FlorkUtils.getDescriptorWithTlsIfNeeded(jobKey, factory, flinkConfig,
-                        flinkJob.spec.florkConf?.preferClusterInternalService ?: true)
-                flinkClusterDescriptor.use { descriptor ->
-                    descriptor.retrieve(flinkJob.metadata.name).clusterClient.use { flinkClient ->
-                        waitForRunningJob(flinkJob, flinkClient)
-                    }
-                }
+                awaitJobManagerReadiness()
+                waitForRunningJob(flinkJob, flinkConfig, deployingNanos)
+                FlorkMetrics.recordTransition(FlorkPhase.DEPLOYING, FlorkPhase.DEPLOYED, deployingNanos)
             }
         }
 
@@ -100,8 +112,16 @@ class FlinkJobCreatePhase(
     }
 
     private suspend fun deployFlinkCluster(flinkConfig: Configuration?) = coroutineScope {
+        val event = ClusterDeploymentEvent().describe(jobKey, observedGeneration, flinkJob.status.florkPhase)
+        event.record {
+            deployFlinkCluster(flinkConfig, event)
+        }
+    }
+
+    private suspend fun deployFlinkCluster(flinkConfig: Configuration?, event: ClusterDeploymentEvent) = coroutineScope {
         var seconds = 1L
         while (true) {
+            event.attempts++
             try {
                 supervisorScope {
                     runInterruptible {
@@ -113,10 +133,8 @@ class FlinkJobCreatePhase(
             } catch (e: ClusterDeploymentException) {
                 if (e.message?.contains("already exists") == true) {
                     LOG.warn("Not all Kubernetes resources created for '{}' have been cleaned, retrying.", jobKey)
-                    runInterruptible {
-                        if (deploymentMonitor.deletionLatch.get().await(seconds, TimeUnit.SECONDS)) {
-                            deploymentMonitor.deletionLatch.set(CountDownLatch(1))
-                        }
+                    if (withTimeoutOrNull(seconds * 1000L) { deploymentMonitor.deletion.get().await() } != null) {
+                        deploymentMonitor.deletion.set(CompletableDeferred())
                     }
                     if (seconds < 15L) {
                         seconds *= 2L
@@ -149,6 +167,7 @@ class FlinkJobCreatePhase(
 
         LOG.error("Could not deploy Flink cluster for '{}'.", jobKey)
 
+        flinkJob.status.addTransition(FlinkJobTransition.endingNow(flinkJob.status.florkPhase, FlorkPhase.FAILED, observedGeneration, startNanos))
         flinkJob.status.florkPhase = FlorkPhase.FAILED
         try {
             patchStatus(flinkJob)
@@ -159,15 +178,34 @@ class FlinkJobCreatePhase(
         throw e
     }
     
-    private suspend fun waitForRunningJob(flinkJob: FlinkJobCustomResource, flinkClient: ClusterClient<String>) = coroutineScope {
+    private suspend fun awaitJobManagerReadiness() {
+        LOG.info("Waiting for job manager of '{}' to become ready.", jobKey)
+        val ready = withTimeoutOrNull(JOB_MANAGER_READINESS_TIMEOUT_MILLIS) {
+            FlinkJobManagerReadiness.await(k8sClient, flinkJob.metadata.namespace, flinkJob.metadata.name)
+        }
+        if (ready == null) {
+            LOG.warn("Could not detect readiness of job manager for '{}', polling its status anyway.", jobKey)
+        }
+    }
+
+    // the job manager should be ready, so the job usually starts soon, but polling slows down if it doesn't
+    private suspend fun waitForRunningJob(flinkJob: FlinkJobCustomResource, flinkConfig: Configuration, deployingNanos: Long) = coroutineScope {
+        var pollMillis = MIN_POLL_MILLIS
+        suspend fun backOff() {
+            delay(pollMillis)
+            pollMillis = (pollMillis * 2L).coerceAtMost(MAX_POLL_MILLIS)
+        }
+
         while (true) {
             try {
-                val jobs = flinkClient.listJobs().await()
+                val flinkClient = clientCache.get(flinkConfig, flinkJob.metadata.name,
+                        flinkJob.spec.florkConf?.preferClusterInternalService ?: true)
+                val jobs = flinkClient.listJobs()
                 val job = jobs.firstOrNull()
                 if (job == null) {
                     // I think this never happens
                     LOG.trace("No jobs registered yet for '{}'.", jobKey)
-                    delay(2_000L)
+                    backOff()
                     continue
                 }
 
@@ -175,16 +213,17 @@ class FlinkJobCreatePhase(
                 if (job.jobState == JobStatus.CREATED || job.jobState == JobStatus.RUNNING) {
                     val reloadedFlinkJob = crOperations.reloadResource(flinkJob)
                     reloadedFlinkJob.status.knownSavepointPath?.let { sp ->
-                        flinkClient.disposeSavepoint(sp).await()
+                        flinkClient.disposeSavepoint(sp)
                     }
                     reloadedFlinkJob.status.apply {
+                        addTransition(FlinkJobTransition.endingNow(florkPhase, FlorkPhase.DEPLOYED, observedGeneration, deployingNanos))
                         florkPhase = FlorkPhase.DEPLOYED
                         knownSavepointPath = null
                     }
                     patchStatus(reloadedFlinkJob)
                     break
                 } else {
-                    delay(2_000L)
+                    backOff()
                 }
             } catch (e: Exception) {
                 if (e is InterruptedException || e is CancellationException) {
@@ -192,7 +231,7 @@ class FlinkJobCreatePhase(
                     throw e
                 }
                 LOG.warn("Exception while trying to fetch Flink status of '{}':", jobKey, e)
-                delay(2_000L)
+                backOff()
             }
         }
     }
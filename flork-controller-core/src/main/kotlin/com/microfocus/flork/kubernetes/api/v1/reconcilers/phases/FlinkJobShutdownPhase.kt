@@ -16,31 +16,49 @@
 
 package com.microfocus.flork.kubernetes.api.v1.reconcilers.phases
 
-import com.microfocus.flork.kubernetes.api.utils.FlinkApplicationClusterDeployer
 import com.microfocus.flork.kubernetes.api.utils.FlinkConfUtils
-import com.microfocus.flork.kubernetes.api.utils.FlorkUtils
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import com.microfocus.flork.kubernetes.api.utils.ShutdownEvent
+import com.microfocus.flork.kubernetes.api.utils.describe
 import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
 import com.microfocus.flork.kubernetes.api.v1.model.FlorkPhase
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkClusterClientCache
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkJobRestClient
 import io.fabric8.kubernetes.api.model.DeletionPropagation
 import io.fabric8.kubernetes.client.KubernetesClient
+import io.micrometer.core.instrument.Tags
 import kotlinx.coroutines.*
-import kotlinx.coroutines.future.await
-import org.apache.flink.client.program.ClusterClient
 import org.apache.flink.configuration.CheckpointingOptions
-import org.apache.flink.configuration.GlobalConfiguration
 import org.slf4j.LoggerFactory
-import kotlin.io.path.createTempDirectory
+import java.util.concurrent.TimeUnit
 
 class FlinkJobShutdownPhase(
         private val k8sClient: KubernetesClient,
         private val jobKey: String,
+        private val clientCache: FlinkClusterClientCache,
         private val flinkJob: FlinkJobCustomResource
 ) {
     companion object {
         private val LOG = LoggerFactory.getLogger(FlinkJobShutdownPhase::class.java)
     }
 
+    /**
+     * How long stopping the job with a savepoint took, null if no savepoint was taken.
+     */
+    @Volatile
+    var savepointMillis: Long? = null
+        private set
+
     suspend fun shutDownCleanly(): String? = withContext(Dispatchers.IO) {
+        val event = ShutdownEvent().describe(jobKey, flinkJob.metadata.generation, flinkJob.status.florkPhase)
+        event.record {
+            FlorkMetrics.timePhase("shutdown") {
+                shutDown()
+            }.also { event.savepointPath = it }
+        }
+    }
+
+    private suspend fun shutDown(): String? = coroutineScope {
         val savepointPath = if (flinkJob.status.florkPhase == FlorkPhase.DEPLOYED) {
             LOG.info("Checking if savepoint for job '{}' should be triggered.", jobKey)
             try {
@@ -62,44 +80,27 @@ class FlinkJobShutdownPhase(
                     .withPropagationPolicy(DeletionPropagation.FOREGROUND)
                     .delete()
         }
+        clientCache.invalidate()
 
-        return@withContext savepointPath
+        return@coroutineScope savepointPath
     }
 
     private suspend fun shutDownWithSavepoint() = coroutineScope {
         // recover configuration for REST client
-        val tempConfPath = runInterruptible {
-            createTempDirectory(prefix = jobKey.replace("/", "_") + "_").also {
-                FlinkConfUtils.writeConfYamlTo(flinkJob, it)
-            }
-        }
-
-        val flinkConfig = try {
-            runInterruptible {
-                GlobalConfiguration.loadConfiguration(tempConfPath.toString())
-            }
-        } finally {
-            FlinkConfUtils.cleanFiles(tempConfPath)
-        }
+        val flinkConfig = FlinkConfUtils.loadConfigurationFromSpec(flinkJob)
 
         val withSavepoint = flinkConfig.contains(CheckpointingOptions.SAVEPOINT_DIRECTORY)
         if (!withSavepoint) {
             LOG.info("No savepoint directory configured for '{}'.")
         }
 
-        val factory = FlinkApplicationClusterDeployer.getClusterClientFactory(flinkConfig)
-        val flinkClusterDescriptor = FlorkUtils.getDescriptorWithTlsIfNeeded(jobKey, factory, flinkConfig,
+        val flinkClient = clientCache.get(flinkConfig, flinkJob.metadata.name,
                 flinkJob.spec.florkConf?.preferClusterInternalService ?: true)
-
-        return@coroutineScope flinkClusterDescriptor.use { descriptor ->
-            descriptor.retrieve(flinkJob.metadata.name).clusterClient.use { flinkClient ->
-                sendSavepointCommand(flinkClient, withSavepoint)
-            }
-        }
+        return@coroutineScope sendSavepointCommand(flinkClient, withSavepoint)
     }
 
-    private suspend fun sendSavepointCommand(flinkClient: ClusterClient<String>, withSavepoint: Boolean) = coroutineScope {
-        val job = flinkClient.listJobs().await().firstOrNull()
+    private suspend fun sendSavepointCommand(flinkClient: FlinkJobRestClient, withSavepoint: Boolean) = coroutineScope {
+        val job = flinkClient.listJobs().firstOrNull()
         if (job == null) {
             LOG.warn("Could not find job corresponding to '{}' in its job manager.", jobKey)
             return@coroutineScope null
@@ -107,10 +108,15 @@ class FlinkJobShutdownPhase(
         return@coroutineScope if (withSavepoint) {
             LOG.info("Stopping '{}' with savepoint.", jobKey)
             val flag = flinkJob.spec.policies?.savepoint?.advanceToEndOfEventTime ?: false
-            flinkClient.stopWithSavepoint(job.jobId, flag, null).await()
+            val startNanos = System.nanoTime()
+            FlorkMetrics.time(FlorkMetrics.SAVEPOINT_DURATION, Tags.empty()) {
+                flinkClient.stopWithSavepoint(job.jobId, flag)
+            }.also {
+                savepointMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+            }
         } else {
             LOG.info("Cancelling '{}' without savepoint.", jobKey)
-            flinkClient.cancel(job.jobId).await()
+            flinkClient.cancel(job.jobId)
             null
         }
     }
@@ -16,7 +16,12 @@
 
 package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
 
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
 import com.microfocus.flork.kubernetes.api.utils.JsonPatchOperation
+import com.microfocus.flork.kubernetes.api.utils.StatusPatchRetryEvent
+import com.microfocus.flork.kubernetes.api.utils.describe
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobStatus
 import com.microfocus.flork.kubernetes.api.v1.handlers.ConfigMapFlinkJobHandler
 import com.microfocus.flork.kubernetes.api.v1.handlers.HandlerUtils
 import io.fabric8.kubernetes.client.CustomResource
@@ -24,12 +29,23 @@ import io.fabric8.kubernetes.client.KubernetesClient
 import io.fabric8.kubernetes.client.KubernetesClientException
 import io.fabric8.kubernetes.client.dsl.base.PatchContext
 import io.fabric8.kubernetes.client.dsl.base.PatchType
+import io.fabric8.kubernetes.client.informers.cache.Cache
 import kotlinx.coroutines.runInterruptible
 import org.slf4j.LoggerFactory
+import java.net.HttpURLConnection
 
 class ConfigMapFlinkResourceOperations<Spec, Status, T : CustomResource<Spec, Status>>(private val k8sClient: KubernetesClient) : FlinkResourceOperations<Spec, Status, T> {
     companion object {
         private val LOG = LoggerFactory.getLogger(ConfigMapFlinkResourceOperations::class.java)
+
+        // the status config map might not have been created yet
+        private val STATUS_PATCH_RETRIES = RetryPolicy(
+                RuntimeConstants.STATUS_PATCH_BACKOFF_BASE_MILLIS,
+                RuntimeConstants.STATUS_PATCH_BACKOFF_CAP_MILLIS,
+                RuntimeConstants.STATUS_PATCH_DEADLINE_MILLIS
+        ) { e ->
+            RetryPolicy.isRetryableKubernetesError(e) || (e as? KubernetesClientException)?.code == HttpURLConnection.HTTP_NOT_FOUND
+        }
     }
 
     override suspend fun reloadResource(flinkResource: T): T {
@@ -38,48 +54,37 @@ class ConfigMapFlinkResourceOperations<Spec, Status, T : CustomResource<Spec, St
 
     override suspend fun patchStatus(flinkResource: T): T {
         val statusConfigMapName = ConfigMapFlinkJobHandler.getStatusConfigMapName(flinkResource)
-        runInterruptible {
-            val patchContext = PatchContext.Builder()
-                    .withPatchType(PatchType.JSON)
-                    .build()
-            val jsonPatchOperation = JsonPatchOperation(
-                    "replace",
-                    "/data/${ConfigMapFlinkJobHandler.STATUS_CM_STATUS_KEY}",
-                    HandlerUtils.MAPPER.writeValueAsString(flinkResource.status)
-            )
-            patchStatusWithRetries(
-                    statusConfigMapName,
-                    patchContext,
-                    ConfigMapFlinkJobHandler.JSON_MAPPER.writeValueAsString(listOf(jsonPatchOperation))
-            )
-        }
-        return flinkResource
-    }
+        val patchContext = PatchContext.Builder()
+                .withPatchType(PatchType.JSON)
+                .build()
+        val jsonPatchOperation = JsonPatchOperation(
+                "replace",
+                "/data/${ConfigMapFlinkJobHandler.STATUS_CM_STATUS_KEY}",
+                HandlerUtils.MAPPER.writeValueAsString(flinkResource.status)
+        )
+        val diff = ConfigMapFlinkJobHandler.JSON_MAPPER.writeValueAsString(listOf(jsonPatchOperation))
 
-    private tailrec fun patchStatusWithRetries(name: String, patchContext: PatchContext, diff: String) {
-        try {
-            val patched = k8sClient.configMaps()
-                    .inNamespace(k8sClient.namespace)
-                    .withName(name)
-                    .patch(patchContext, diff)
-
-            if (patched == null) {
-                LOG.warn("Could not patch CM '{}', retrying.", name)
-            } else {
-                return
+        STATUS_PATCH_RETRIES.run({ _, e, delayMillis ->
+            LOG.warn("Could not patch CM '{}', retrying in {}ms:", statusConfigMapName, delayMillis, e)
+            recordRetry(flinkResource, e.message)
+        }) {
+            runInterruptible {
+                k8sClient.configMaps()
+                        .inNamespace(k8sClient.namespace)
+                        .withName(statusConfigMapName)
+                        .patch(patchContext, diff)
+                        ?: throw KubernetesClientException("Status config map '$statusConfigMapName' not found.", HttpURLConnection.HTTP_NOT_FOUND, null)
             }
-        } catch (e: KubernetesClientException) {
-            LOG.warn("Could not patch status, retrying:", e)
-        }
-
-        if (Thread.currentThread().isInterrupted) {
-            LOG.warn("Interrupted.")
-            throw InterruptedException()
-        } else {
-            Thread.sleep(500L)
         }
+        return flinkResource
+    }
 
-        patchStatusWithRetries(name, patchContext, diff)
+    private fun recordRetry(flinkResource: T, error: String?) {
+        FlorkMetrics.statusPatchRetried(FlorkMetrics.getKind(flinkResource.javaClass))
+        StatusPatchRetryEvent().describe(Cache.metaNamespaceKeyFunc(flinkResource), flinkResource.metadata.generation,
+                (flinkResource.status as? FlinkJobStatus)?.florkPhase).apply {
+            this.error = error
+        }.commit()
     }
 
     override suspend fun delete(flinkResource: T): Boolean? {
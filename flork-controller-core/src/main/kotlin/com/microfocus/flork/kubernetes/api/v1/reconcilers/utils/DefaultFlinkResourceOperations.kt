@@ -16,9 +16,13 @@
 
 package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
 
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import com.microfocus.flork.kubernetes.api.utils.StatusPatchRetryEvent
+import com.microfocus.flork.kubernetes.api.utils.describe
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobStatus
 import io.fabric8.kubernetes.client.CustomResource
 import io.fabric8.kubernetes.client.KubernetesClient
-import io.fabric8.kubernetes.client.KubernetesClientException
+import io.fabric8.kubernetes.client.informers.cache.Cache
 import io.fabric8.kubernetes.client.informers.cache.Lister
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.runInterruptible
@@ -36,11 +40,13 @@ class DefaultFlinkResourceOperations<Spec, Status, T : CustomResource<Spec, Stat
     }
 
     private val crOperation = k8sClient.resources(clazz)
+    private val statusPatcher = StatusMergePatcher(k8sClient, clazz)
+    private val kind = FlorkMetrics.getKind(clazz)
 
     override suspend fun reloadResource(flinkResource: T): T = withContext(Dispatchers.IO) {
         runInterruptible {
             val concreteLister = waitForListerToBePopulated()
-            concreteLister.namespace(flinkResource.metadata.namespace).get(flinkResource.metadata.name)
+            concreteLister.namespace(flinkResource.metadata.namespace)?.get(flinkResource.metadata.name) ?: flinkResource
         }
     }
 
@@ -57,30 +63,30 @@ class DefaultFlinkResourceOperations<Spec, Status, T : CustomResource<Spec, Stat
 
     // generation doesn't change with metadata or status updates
     override suspend fun patchStatus(flinkResource: T): T = withContext(Dispatchers.IO) {
-        runInterruptible {
-            patchStatusWithRetries(flinkResource)
+        RetryPolicy.STATUS_PATCH.run({ _, e, delayMillis ->
+            LOG.warn("Could not patch status, retrying in {}ms:", delayMillis, e)
+            recordRetry(flinkResource, e.message)
+        }) { attempt ->
+            runInterruptible {
+                statusPatcher.patchStatus(if (attempt == 0) flinkResource else withLatestResourceVersion(flinkResource))
+            }
         }
     }
 
-    private tailrec fun patchStatusWithRetries(flinkResource: T): T {
-        try {
-            return crOperation
-                    .inNamespace(flinkResource.metadata.namespace)
-                    .withName(flinkResource.metadata.name)
-                    .patchStatus(flinkResource)
-        } catch (e: KubernetesClientException) {
-            LOG.warn("Could not patch status, retrying:", e)
-        }
-
-        if (Thread.currentThread().isInterrupted) {
-            LOG.warn("Interrupted.")
-            throw InterruptedException()
-        }
-
+    // the resource version of a failed patch might have been outdated
+    private fun withLatestResourceVersion(flinkResource: T): T {
         val concreteLister = waitForListerToBePopulated()
         val cr = concreteLister.namespace(flinkResource.metadata.namespace)?.get(flinkResource.metadata.name) ?: flinkResource
         cr.status = flinkResource.status
-        return patchStatusWithRetries(cr)
+        return cr
+    }
+
+    private fun recordRetry(flinkResource: T, error: String?) {
+        FlorkMetrics.statusPatchRetried(kind)
+        StatusPatchRetryEvent().describe(Cache.metaNamespaceKeyFunc(flinkResource), flinkResource.metadata.generation,
+                (flinkResource.status as? FlinkJobStatus)?.florkPhase).apply {
+            this.error = error
+        }.commit()
     }
 
     override suspend fun delete(flinkResource: T): Boolean? = withContext(Dispatchers.IO) {
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.microfocus.flork.kubernetes.api.utils.FlorkUtils
+import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import org.apache.flink.configuration.Configuration
+import org.apache.flink.kubernetes.configuration.KubernetesConfigOptions
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.util.*
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Keeps the REST client of a single job's cluster so that the phases of its phaser can share it.
+ * The client is rebuilt if the REST/TLS configuration changes,
+ * and it must be invalidated when the cluster is deleted because its address might change.
+ *
+ * @see FlinkRestClients
+ */
+class FlinkClusterClientCache internal constructor(
+        private val jobKey: String,
+        private val connector: (String, Configuration, String) -> FlinkJobRestClient
+) : AutoCloseable {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(FlinkClusterClientCache::class.java)
+
+        private val KEY_PREFIXES = listOf(
+                "rest.",
+                "security.ssl.",
+                "high-availability",
+                KubernetesConfigOptions.CLUSTER_ID.key(),
+                KubernetesConfigOptions.NAMESPACE.key(),
+                KubernetesConfigOptions.REST_SERVICE_EXPOSED_TYPE.key(),
+                KubernetesConfigOptions.CONTEXT.key(),
+                KubernetesConfigOptions.KUBE_CONFIG_FILE.key()
+        )
+
+        internal fun getCacheKey(flinkConfig: Configuration): SortedMap<String, String> {
+            return flinkConfig.toMap().filterKeys { key ->
+                KEY_PREFIXES.any { key.startsWith(it) }
+            }.toSortedMap()
+        }
+    }
+
+    constructor(jobKey: String) : this(jobKey, FlinkRestClients::connect)
+
+    private val mutex = Mutex()
+    private val entry = AtomicReference<Entry?>()
+    private val closed = AtomicBoolean(false)
+
+    /**
+     * Returns the cached client if the effective REST configuration didn't change, otherwise a new one.
+     */
+    suspend fun get(flinkConfig: Configuration, clusterId: String, preferInternalService: Boolean): FlinkJobRestClient = mutex.withLock {
+        check(!closed.get()) { "Client cache of '$jobKey' is already closed." }
+
+        val effectiveConfig = Configuration(flinkConfig)
+        FlorkUtils.applyRestClientSettings(jobKey, effectiveConfig, preferInternalService)
+        val key = getCacheKey(effectiveConfig)
+
+        entry.get()?.let { current ->
+            if (current.clusterId == clusterId && current.key == key) {
+                return@withLock current.client
+            }
+        }
+
+        LOG.debug("Resolving Flink REST endpoint of '{}'.", jobKey)
+        val client = runInterruptible {
+            connector(jobKey, effectiveConfig, clusterId)
+        }
+        entry.set(Entry(clusterId, key, client))
+        return@withLock client
+    }
+
+    fun invalidate() {
+        if (entry.getAndSet(null) != null) {
+            LOG.debug("Discarding Flink REST client for '{}'.", jobKey)
+        }
+    }
+
+    override fun close() {
+        closed.set(true)
+        invalidate()
+    }
+
+    private class Entry(val clusterId: String, val key: SortedMap<String, String>, val client: FlinkJobRestClient)
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import io.fabric8.kubernetes.api.model.apps.Deployment
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer
+import io.fabric8.kubernetes.client.informers.cache.Cache
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Shares Deployment informers among all phasers instead of having 1 watch per resource.
+ * Only Flink native deployments are watched, and their events are dispatched to the monitor registered under the same key.
+ */
+object FlinkDeploymentInformers {
+    private val LOG: Logger = LoggerFactory.getLogger(FlinkDeploymentInformers::class.java)
+
+    internal const val ANY_NAMESPACE = "*"
+
+    private val INFORMERS = ConcurrentHashMap<String, SharedIndexInformer<Deployment>>()
+    private val MONITORS = ConcurrentHashMap<String, FlinkResourceDeploymentMonitor>()
+
+    private val DISPATCHER = object : ResourceEventHandler<Deployment> {
+        override fun onAdd(obj: Deployment) {
+            MONITORS[Cache.metaNamespaceKeyFunc(obj)]?.onAdd(obj)
+        }
+
+        override fun onUpdate(oldObj: Deployment, newObj: Deployment) {
+            MONITORS[Cache.metaNamespaceKeyFunc(newObj)]?.onUpdate(oldObj, newObj)
+        }
+
+        override fun onDelete(obj: Deployment, deletedFinalStateUnknown: Boolean) {
+            MONITORS[Cache.metaNamespaceKeyFunc(obj)]?.onDelete(obj, deletedFinalStateUnknown)
+        }
+    }
+
+    /**
+     * Blocks if the informer for the namespace must be started first.
+     * If the deployment already exists, the monitor is notified immediately.
+     */
+    @JvmStatic
+    fun register(k8sClient: KubernetesClient, namespace: String, name: String, monitor: FlinkResourceDeploymentMonitor) {
+        val key = "$namespace/$name"
+        MONITORS[key] = monitor
+
+        val informer = INFORMERS.computeIfAbsent(getInformerNamespace(namespace)) { informerNamespace ->
+            startInformer(k8sClient, informerNamespace)
+        }
+        informer.store.getByKey(key)?.let { monitor.onAdd(it) }
+    }
+
+    @JvmStatic
+    fun unregister(namespace: String, name: String, monitor: FlinkResourceDeploymentMonitor) {
+        MONITORS.remove("$namespace/$name", monitor)
+    }
+
+    @JvmStatic
+    fun reset() {
+        MONITORS.clear()
+        INFORMERS.keys.forEach { namespace ->
+            INFORMERS.remove(namespace)?.stop()
+        }
+    }
+
+    internal fun getInformerNamespace(namespace: String): String {
+        return if (RuntimeConstants.MANAGED_NAMESPACES.contains(ANY_NAMESPACE)) ANY_NAMESPACE else namespace
+    }
+
+    private fun startInformer(k8sClient: KubernetesClient, namespace: String): SharedIndexInformer<Deployment> {
+        LOG.info("Starting shared deployment informer for namespace '{}'.", namespace)
+        val deployments = if (namespace == ANY_NAMESPACE) {
+            k8sClient.apps().deployments().inAnyNamespace()
+        } else {
+            k8sClient.apps().deployments().inNamespace(namespace)
+        }
+        return deployments.withLabel("type", "flink-native-kubernetes").inform(DISPATCHER)
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import io.fabric8.kubernetes.api.model.ConfigMap
+import io.fabric8.kubernetes.api.model.DeleteOptionsBuilder
+import io.fabric8.kubernetes.api.model.DeletionPropagation
+import io.fabric8.kubernetes.api.model.ListOptionsBuilder
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.Watcher
+import io.fabric8.kubernetes.client.WatcherException
+import io.fabric8.kubernetes.client.dsl.base.OperationSupport
+import io.fabric8.kubernetes.client.utils.Serialization
+import io.fabric8.kubernetes.client.utils.URLUtils
+import io.micrometer.core.instrument.Tags
+import kotlinx.coroutines.*
+import org.apache.flink.configuration.HighAvailabilityOptions
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Deletes the config maps of Flink's Kubernetes HA services with a single delete-collection request,
+ * and waits for their deletion with a watch instead of polling.
+ */
+object FlinkHighAvailabilityCleanup {
+    private val LOG: Logger = LoggerFactory.getLogger(FlinkHighAvailabilityCleanup::class.java)
+
+    fun isEnabled(flinkJob: FlinkJobCustomResource): Boolean {
+        return flinkJob.spec.flinkConf?.containsKey(HighAvailabilityOptions.HA_MODE.key()) == true && flinkJob.spec.florkConf?.cleanHighAvailability == true
+    }
+
+    fun getLabels(name: String): Map<String, String> {
+        return mapOf(
+                "app" to name,
+                "configmap-type" to "high-availability",
+                "type" to "flink-native-kubernetes"
+        )
+    }
+
+    /**
+     * Does nothing unless the job enabled HA and its cleanup.
+     * If the config maps aren't gone after [timeoutMillis], a warning is logged and this returns anyway.
+     */
+    suspend fun cleanIfEnabled(
+            k8sClient: KubernetesClient,
+            flinkJob: FlinkJobCustomResource,
+            key: String?,
+            timeoutMillis: Long = RuntimeConstants.HA_CLEANUP_TIMEOUT_MILLIS
+    ) = withContext(Dispatchers.IO) {
+        if (!isEnabled(flinkJob)) {
+            return@withContext
+        }
+
+        LOG.info("Cleaning HA config maps for '{}'.", key)
+        val startNanos = System.nanoTime()
+        var outcome = FlorkMetrics.OUTCOME_FAILURE
+        try {
+            val deleted = deleteAndAwait(k8sClient, flinkJob.metadata.namespace, getLabels(flinkJob.metadata.name), timeoutMillis)
+            outcome = if (deleted) FlorkMetrics.OUTCOME_SUCCESS else FlorkMetrics.OUTCOME_TIMEOUT
+            if (!deleted) {
+                LOG.warn("HA config maps for '{}' were not deleted within {}ms.", key, timeoutMillis)
+            }
+        } catch (e: CancellationException) {
+            outcome = FlorkMetrics.OUTCOME_CANCELLED
+            throw e
+        } finally {
+            FlorkMetrics.record(FlorkMetrics.HA_CLEANUP_DURATION, Tags.of("outcome", outcome), startNanos)
+        }
+    }
+
+    private suspend fun deleteAndAwait(k8sClient: KubernetesClient, namespace: String, labels: Map<String, String>, timeoutMillis: Long): Boolean = coroutineScope {
+        val cmOperation = k8sClient.configMaps()
+                .inNamespace(namespace)
+                .withLabels(labels)
+
+        val existing = runInterruptible { cmOperation.list() }
+        if (existing.items.isNullOrEmpty()) {
+            return@coroutineScope true
+        }
+
+        val remaining = ConcurrentHashMap.newKeySet<String>()
+        existing.items.forEach { remaining.add(it.metadata.name) }
+        val deletion = CompletableDeferred<Unit>()
+
+        val listOptions = ListOptionsBuilder()
+                .withResourceVersion(existing.metadata.resourceVersion)
+                .build()
+        val watch = runInterruptible {
+            cmOperation.watch(listOptions, object : Watcher<ConfigMap> {
+                override fun eventReceived(action: Watcher.Action, resource: ConfigMap) {
+                    if (action == Watcher.Action.DELETED && remaining.remove(resource.metadata.name) && remaining.isEmpty()) {
+                        deletion.complete(Unit)
+                    }
+                }
+
+                override fun onClose(cause: WatcherException?) {
+                    LOG.debug("Watch of HA config maps in '{}' closed.", namespace, cause)
+                }
+            })
+        }
+
+        try {
+            LOG.debug("Deleting {} config map(s).", remaining.size)
+            runInterruptible {
+                deleteCollection(k8sClient, namespace, labels)
+            }
+            withTimeoutOrNull(timeoutMillis) { deletion.await() } != null ||
+                    runInterruptible { cmOperation.list().items.isNullOrEmpty() }
+        } finally {
+            watch.close()
+        }
+    }
+
+    // fabric8's delete() with labels lists the resources and deletes them one by one
+    private fun deleteCollection(k8sClient: KubernetesClient, namespace: String, labels: Map<String, String>) {
+        val labelSelector = labels.entries.joinToString(",") { "${it.key}=${it.value}" }
+        val url = URLUtils.join(k8sClient.masterUrl.toString(), "api", "v1", "namespaces", namespace, "configmaps") +
+                "?labelSelector=" + URLUtils.encodeToUTF(labelSelector)
+        val deleteOptions = DeleteOptionsBuilder()
+                .withPropagationPolicy(DeletionPropagation.BACKGROUND.toString())
+                .build()
+        val request = k8sClient.httpClient.newHttpRequestBuilder()
+                .uri(url)
+                .delete("application/json", Serialization.asJson(deleteOptions))
+                .build()
+
+        val response = try {
+            k8sClient.httpClient.send(request, String::class.java)
+        } catch (e: IOException) {
+            throw OperationSupport.requestException(request, e)
+        }
+        if (!response.isSuccessful) {
+            throw OperationSupport.requestFailure(request, OperationSupport.createStatus(response))
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import io.fabric8.kubernetes.api.model.Endpoints
+import io.fabric8.kubernetes.api.model.HasMetadata
+import io.fabric8.kubernetes.api.model.Pod
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runInterruptible
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.function.Function
+
+/**
+ * Signals when a Flink cluster's job manager pod is ready and its rest service has endpoints,
+ * based on shared informers like [FlinkDeploymentInformers].
+ */
+object FlinkJobManagerReadiness {
+    private val LOG: Logger = LoggerFactory.getLogger(FlinkJobManagerReadiness::class.java)
+
+    private const val CLUSTER_INDEX = "flink-cluster"
+
+    private val POD_INFORMERS = ConcurrentHashMap<String, SharedIndexInformer<Pod>>()
+    private val ENDPOINTS_INFORMERS = ConcurrentHashMap<String, SharedIndexInformer<Endpoints>>()
+    private val WAITERS = ConcurrentHashMap<String, CompletableDeferred<Unit>>()
+
+    private val HANDLER = object : ResourceEventHandler<HasMetadata> {
+        override fun onAdd(obj: HasMetadata) {
+            maybeSignal(getClusterKey(obj))
+        }
+
+        override fun onUpdate(oldObj: HasMetadata, newObj: HasMetadata) {
+            maybeSignal(getClusterKey(newObj))
+        }
+
+        override fun onDelete(obj: HasMetadata, deletedFinalStateUnknown: Boolean) {
+            // nop
+        }
+    }
+
+    /**
+     * Suspends until the job manager of the given Flink cluster can be expected to answer requests.
+     */
+    suspend fun await(k8sClient: KubernetesClient, namespace: String, name: String) {
+        val key = "$namespace/$name"
+        val signal = CompletableDeferred<Unit>()
+        WAITERS.put(key, signal)?.cancel()
+        try {
+            runInterruptible(Dispatchers.IO) {
+                val informerNamespace = FlinkDeploymentInformers.getInformerNamespace(namespace)
+                POD_INFORMERS.computeIfAbsent(informerNamespace) { startPodInformer(k8sClient, it) }
+                ENDPOINTS_INFORMERS.computeIfAbsent(informerNamespace) { startEndpointsInformer(k8sClient, it) }
+            }
+            maybeSignal(key)
+            signal.await()
+        } finally {
+            WAITERS.remove(key, signal)
+        }
+    }
+
+    @JvmStatic
+    fun reset() {
+        WAITERS.values.forEach { it.cancel() }
+        WAITERS.clear()
+        POD_INFORMERS.keys.forEach { POD_INFORMERS.remove(it)?.stop() }
+        ENDPOINTS_INFORMERS.keys.forEach { ENDPOINTS_INFORMERS.remove(it)?.stop() }
+    }
+
+    private fun maybeSignal(key: String) {
+        val signal = WAITERS[key] ?: return
+        val namespace = key.substringBefore("/")
+        val name = key.substringAfter("/")
+        val informerNamespace = FlinkDeploymentInformers.getInformerNamespace(namespace)
+
+        val podReady = POD_INFORMERS[informerNamespace]?.indexer?.byIndex(CLUSTER_INDEX, key)?.any { pod ->
+            pod.status?.conditions?.any { it.type == "Ready" && it.status == "True" } == true
+        } == true
+        if (!podReady) {
+            return
+        }
+
+        val endpointsReady = ENDPOINTS_INFORMERS[informerNamespace]?.indexer?.byIndex(CLUSTER_INDEX, key)?.any { endpoints ->
+            endpoints.metadata.name == "$name-rest" && endpoints.subsets?.any { it.addresses?.isNotEmpty() == true } == true
+        } == true
+        if (endpointsReady && signal.complete(Unit)) {
+            LOG.info("Job manager of '{}' is ready.", key)
+        }
+    }
+
+    private fun <T : HasMetadata> getIndexers(): Map<String, Function<T, List<String>>> {
+        return mapOf(CLUSTER_INDEX to Function { obj -> listOf(getClusterKey(obj)) })
+    }
+
+    private fun getClusterKey(obj: HasMetadata): String {
+        return "${obj.metadata.namespace}/${obj.metadata.labels?.get("app")}"
+    }
+
+    private fun startPodInformer(k8sClient: KubernetesClient, namespace: String): SharedIndexInformer<Pod> {
+        LOG.info("Starting shared job manager pod informer for namespace '{}'.", namespace)
+        val pods = if (namespace == FlinkDeploymentInformers.ANY_NAMESPACE) {
+            k8sClient.pods().inAnyNamespace()
+        } else {
+            k8sClient.pods().inNamespace(namespace)
+        }
+        return pods.withLabels(mapOf("type" to "flink-native-kubernetes", "component" to "jobmanager"))
+                .withIndexers(getIndexers())
+                .inform(HANDLER)
+    }
+
+    private fun startEndpointsInformer(k8sClient: KubernetesClient, namespace: String): SharedIndexInformer<Endpoints> {
+        LOG.info("Starting shared Flink endpoints informer for namespace '{}'.", namespace)
+        val endpoints = if (namespace == FlinkDeploymentInformers.ANY_NAMESPACE) {
+            k8sClient.endpoints().inAnyNamespace()
+        } else {
+            k8sClient.endpoints().inNamespace(namespace)
+        }
+        return endpoints.withLabel("type", "flink-native-kubernetes")
+                .withIndexers(getIndexers())
+                .inform(HANDLER)
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.future.await
+import org.apache.flink.api.common.JobID
+import org.apache.flink.configuration.Configuration
+import org.apache.flink.configuration.RestOptions
+import org.apache.flink.runtime.client.JobStatusMessage
+import org.apache.flink.runtime.rest.RestClient
+import org.apache.flink.runtime.rest.handler.async.AsynchronousOperationResult
+import org.apache.flink.runtime.rest.messages.*
+import org.apache.flink.runtime.rest.messages.job.savepoints.*
+import org.apache.flink.runtime.rest.messages.job.savepoints.stop.StopWithSavepointRequestBody
+import org.apache.flink.runtime.rest.messages.job.savepoints.stop.StopWithSavepointTriggerHeaders
+import org.apache.flink.runtime.rest.messages.queue.QueueStatus
+import org.apache.flink.runtime.rest.util.RestClientException
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.io.IOException
+import kotlin.coroutines.cancellation.CancellationException
+
+/**
+ * Lightweight client for the REST endpoint of 1 job's cluster, backed by a shared [RestClient].
+ * Nothing is allocated per job apart from this object, so it doesn't need to be closed.
+ */
+class FlinkJobRestClient internal constructor(
+        private val jobKey: String,
+        private val restClient: RestClient,
+        val host: String,
+        val port: Int,
+        flinkConfig: Configuration
+) {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(FlinkJobRestClient::class.java)
+
+        private const val MIN_OPERATION_POLL_MILLIS = 100L
+        private const val MAX_OPERATION_POLL_MILLIS = 2_000L
+    }
+
+    private val retryAttempts = flinkConfig.get(RestOptions.RETRY_MAX_ATTEMPTS).coerceAtLeast(1)
+    private val retryDelayMillis = flinkConfig.get(RestOptions.RETRY_DELAY)
+
+    suspend fun listJobs(): List<JobStatusMessage> {
+        val details = send(JobsOverviewHeaders.getInstance(), EmptyMessageParameters.getInstance(), EmptyRequestBody.getInstance())
+        return details.jobs.map { JobStatusMessage(it.jobId, it.jobName, it.status, it.startTime) }
+    }
+
+    suspend fun cancel(jobId: JobID) {
+        val params = JobCancellationMessageParameters().apply {
+            jobPathParameter.resolve(jobId)
+            terminationModeQueryParameter.resolve(listOf(TerminationModeQueryParameter.TerminationMode.CANCEL))
+        }
+        send(JobCancellationHeaders.getInstance(), params, EmptyRequestBody.getInstance())
+    }
+
+    suspend fun stopWithSavepoint(jobId: JobID, advanceToEndOfEventTime: Boolean): String? {
+        val triggerParams = SavepointTriggerMessageParameters().apply {
+            jobID.resolve(jobId)
+        }
+        val triggerId = send(StopWithSavepointTriggerHeaders.getInstance(), triggerParams,
+                StopWithSavepointRequestBody(null, advanceToEndOfEventTime)).triggerId
+
+        val statusParams = SavepointStatusMessageParameters().apply {
+            jobIdPathParameter.resolve(jobId)
+            triggerIdPathParameter.resolve(triggerId)
+        }
+        val info = awaitOperation {
+            send(SavepointStatusHeaders.getInstance(), statusParams, EmptyRequestBody.getInstance())
+        }
+        info.failureCause?.let { throw it.deserializeError(javaClass.classLoader) }
+        return info.location
+    }
+
+    suspend fun disposeSavepoint(savepointPath: String) {
+        val triggerId = send(SavepointDisposalTriggerHeaders.getInstance(), EmptyMessageParameters.getInstance(),
+                SavepointDisposalRequest(savepointPath)).triggerId
+
+        val statusParams = SavepointDisposalStatusMessageParameters().apply {
+            triggerIdPathParameter.resolve(triggerId)
+        }
+        val info = awaitOperation {
+            send(SavepointDisposalStatusHeaders.getInstance(), statusParams, EmptyRequestBody.getInstance())
+        }
+        info.failureCause?.let { throw it.deserializeError(javaClass.classLoader) }
+    }
+
+    private suspend fun <V : Any> awaitOperation(fetchStatus: suspend () -> AsynchronousOperationResult<V>): V {
+        var pollMillis = MIN_OPERATION_POLL_MILLIS
+        while (true) {
+            val result = fetchStatus()
+            if (result.queueStatus().id == QueueStatus.Id.COMPLETED) {
+                return result.resource() ?: throw IllegalStateException("Operation for '$jobKey' completed without result.")
+            }
+            delay(pollMillis)
+            pollMillis = (pollMillis * 2L).coerceAtMost(MAX_OPERATION_POLL_MILLIS)
+        }
+    }
+
+    private suspend fun <R : RequestBody, P : ResponseBody, U : MessageParameters> send(headers: MessageHeaders<R, P, U>, params: U, body: R): P {
+        var attempt = 1
+        while (true) {
+            try {
+                return restClient.sendRequest(host, port, headers, params, body).await()
+            } catch (e: Exception) {
+                if (e is CancellationException || attempt >= retryAttempts || !isRetryable(e)) {
+                    throw e
+                }
+                LOG.trace("Retrying request {} to '{}' after attempt {}:", headers.targetRestEndpointURL, jobKey, attempt, e)
+                attempt++
+                delay(retryDelayMillis)
+            }
+        }
+    }
+
+    // connection problems and server errors, like RestClusterClient retries them
+    private fun isRetryable(e: Throwable): Boolean {
+        var ex: Throwable? = e
+        while (ex != null) {
+            if (ex is IOException) {
+                return true
+            }
+            if (ex is RestClientException && ex.httpResponseStatus.code() >= 500) {
+                return true
+            }
+            ex = ex.cause
+        }
+        return false
+    }
+}
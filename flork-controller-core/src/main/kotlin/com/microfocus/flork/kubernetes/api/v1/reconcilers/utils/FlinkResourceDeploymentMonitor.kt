@@ -18,8 +18,8 @@ package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
 
 import io.fabric8.kubernetes.api.model.apps.Deployment
 import io.fabric8.kubernetes.client.informers.ResourceEventHandler
+import kotlinx.coroutines.CompletableDeferred
 import org.slf4j.LoggerFactory
-import java.util.concurrent.CountDownLatch
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicReference
 
@@ -29,7 +29,7 @@ class FlinkResourceDeploymentMonitor(private val namespace: String, private val
     }
 
     val addedFlag = AtomicBoolean(false)
-    val deletionLatch = AtomicReference(CountDownLatch(1))
+    val deletion = AtomicReference(CompletableDeferred<Unit>())
 
     override fun onAdd(obj: Deployment?) {
         if (addedFlag.compareAndSet(false, true)) {
@@ -44,7 +44,7 @@ class FlinkResourceDeploymentMonitor(private val namespace: String, private val
     override fun onDelete(obj: Deployment?, deletedFinalStateUnknown: Boolean) {
         if (addedFlag.compareAndSet(true, false)) {
             LOG.info("Flink resource deployment deleted: {}/{}", namespace, name)
-            deletionLatch.get().countDown()
+            deletion.get().complete(Unit)
         }
     }
 }
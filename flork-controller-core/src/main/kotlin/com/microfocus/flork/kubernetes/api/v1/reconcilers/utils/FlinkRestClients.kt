@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import com.microfocus.flork.kubernetes.api.utils.FlinkApplicationClusterDeployer
+import org.apache.flink.configuration.Configuration
+import org.apache.flink.configuration.RestOptions
+import org.apache.flink.kubernetes.configuration.KubernetesConfigOptions
+import org.apache.flink.runtime.rest.RestClient
+import org.apache.flink.util.concurrent.ExecutorThreadFactory
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.net.URL
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Facade for all REST communication with Flink job managers.
+ * Instead of a RestClusterClient per job, each with its own event loop and executors,
+ * jobs share 1 [RestClient] per distinct client configuration (usually only TLS settings differ, if at all),
+ * and all clients share 1 bounded executor.
+ */
+object FlinkRestClients {
+    private val LOG: Logger = LoggerFactory.getLogger(FlinkRestClients::class.java)
+
+    // these identify the server, the rest of the REST options configure the client
+    private val ENDPOINT_OPTIONS = setOf(
+            RestOptions.ADDRESS.key(),
+            RestOptions.PORT.key(),
+            RestOptions.BIND_ADDRESS.key(),
+            RestOptions.BIND_PORT.key()
+    )
+
+    private val EXECUTOR = AtomicReference<ScheduledExecutorService?>()
+    private val REST_CLIENTS = ConcurrentHashMap<SortedMap<String, String>, RestClient>()
+
+    internal fun getRestClientKey(flinkConfig: Configuration): SortedMap<String, String> {
+        return flinkConfig.toMap().filterKeys { key ->
+            (key.startsWith("rest.") && key !in ENDPOINT_OPTIONS) || key.startsWith("security.ssl.")
+        }.toSortedMap()
+    }
+
+    @Synchronized
+    fun getExecutor(): ScheduledExecutorService {
+        return EXECUTOR.get() ?: Executors.newScheduledThreadPool(RuntimeConstants.FLINK_REST_CLIENT_THREADS,
+                ExecutorThreadFactory("flork-flink-rest-client")).also {
+            EXECUTOR.set(it)
+        }
+    }
+
+    internal fun getRestClient(flinkConfig: Configuration): RestClient {
+        return REST_CLIENTS.computeIfAbsent(getRestClientKey(flinkConfig)) {
+            LOG.debug("Creating shared Flink REST client, {} existed before.", REST_CLIENTS.size)
+            RestClient(flinkConfig, getExecutor())
+        }
+    }
+
+    /**
+     * Resolves the REST endpoint of a job's cluster, blocking if the Kubernetes API must be queried.
+     * The given configuration must already contain the client-side TLS settings.
+     */
+    @JvmStatic
+    fun connect(jobKey: String, flinkConfig: Configuration, clusterId: String): FlinkJobRestClient {
+        val restClient = getRestClient(flinkConfig)
+
+        val exposedType = flinkConfig.get(KubernetesConfigOptions.REST_SERVICE_EXPOSED_TYPE)
+        if (exposedType == KubernetesConfigOptions.ServiceExposedType.ClusterIP) {
+            val namespace = flinkConfig.get(KubernetesConfigOptions.NAMESPACE)
+            // same naming as Flink's rest service decorator
+            return FlinkJobRestClient(jobKey, restClient, "$clusterId-rest.$namespace", flinkConfig.get(RestOptions.PORT), flinkConfig)
+        }
+
+        LOG.debug("Retrieving {} REST endpoint of '{}' with a cluster descriptor.", exposedType, jobKey)
+        val factory = FlinkApplicationClusterDeployer.getClusterClientFactory(flinkConfig)
+        val url = factory.createClusterDescriptor(flinkConfig).use { descriptor ->
+            descriptor.retrieve(clusterId).clusterClient.use { it.webInterfaceURL }
+        }.let { URL(it) }
+        return FlinkJobRestClient(jobKey, restClient, url.host, url.port, flinkConfig)
+    }
+
+    @JvmStatic
+    fun reset() {
+        REST_CLIENTS.values.forEach { it.closeAsync() }
+        REST_CLIENTS.clear()
+        synchronized(this) {
+            EXECUTOR.getAndSet(null)?.shutdownNow()
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.leadership.LeadershipManager
+
+/**
+ * Owner of the process-wide state shared by FlinkJob and FlinkSession phasers,
+ * it must only be reset once all reconcilers have been stopped.
+ */
+object FlinkSharedResources {
+    @JvmStatic
+    fun reset() {
+        LeadershipManager.reset()
+        FlinkDeploymentInformers.reset()
+        FlinkJobManagerReadiness.reset()
+        FlinkRestClients.reset()
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * Per-key exponential backoff, the returned delays are jittered between 50% and 100% of the current backoff.
+ */
+class ReconcileBackoff(private val baseMillis: Long, private val capMillis: Long) {
+    companion object {
+        private const val MAX_EXPONENT = 30
+    }
+
+    private val failures = ConcurrentHashMap<String, Int>()
+
+    /**
+     * Registers a failure for the key and returns how long to wait before retrying.
+     */
+    fun next(key: String): Long {
+        val backoff = computeBackoff(failures.merge(key, 1, Int::plus) ?: 1)
+        val half = backoff / 2L
+        return half + (ThreadLocalRandom.current().nextDouble() * (backoff - half)).toLong()
+    }
+
+    fun reset(key: String) {
+        failures.remove(key)
+    }
+
+    fun getFailures(key: String): Int {
+        return failures[key] ?: 0
+    }
+
+    /**
+     * Current backoff without jitter, 0 if the last attempt for the key succeeded.
+     */
+    fun getBackoffMillis(key: String): Long {
+        return failures[key]?.let { computeBackoff(it) } ?: 0L
+    }
+
+    private fun computeBackoff(attempt: Int): Long {
+        val exponent = (attempt - 1).coerceIn(0, MAX_EXPONENT)
+        return (baseMillis shl exponent).coerceIn(0L, capMillis)
+    }
+}
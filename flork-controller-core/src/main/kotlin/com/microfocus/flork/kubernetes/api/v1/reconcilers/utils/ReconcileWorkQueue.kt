@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Work queue where requests are coalesced per key, keeping only the latest item unless [merge] says otherwise.
+ * A key is never processed by more than 1 worker at a time,
+ * if it's added again while being processed, it's marked dirty and processed again afterwards.
+ * Depth, in-flight count and wait times are also reported to [FlorkMetrics], tagged with [name].
+ */
+class ReconcileWorkQueue<T>(
+        private val name: String,
+        scope: CoroutineScope,
+        workers: Int,
+        private val merge: (pending: T, added: T) -> T = { _, added -> added },
+        private val handler: suspend (key: String, item: T) -> Unit
+) {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(ReconcileWorkQueue::class.java)
+    }
+
+    data class Stats(
+            val depth: Int,
+            val inFlight: Int,
+            val processed: Long,
+            val averageWaitMillis: Long,
+            val maxWaitMillis: Long
+    )
+
+    private class Entry<T>(val item: T, val enqueuedAtNanos: Long)
+
+    private val readyKeys = Channel<String>(Channel.UNLIMITED)
+
+    // guarded by this
+    private val pending = HashMap<String, Entry<T>>()
+    private val queued = HashSet<String>()
+    private val processing = HashSet<String>()
+
+    private val inFlight = AtomicInteger(0)
+    private val processed = AtomicLong(0L)
+    private val totalWaitNanos = AtomicLong(0L)
+    private val maxWaitNanos = AtomicLong(0L)
+
+    init {
+        repeat(workers.coerceAtLeast(1)) {
+            scope.launch { work() }
+        }
+    }
+
+    fun add(key: String, item: T) {
+        synchronized(this) {
+            val previous = pending[key]
+            pending[key] = if (previous == null) {
+                FlorkMetrics.workQueueDepthChanged(name, 1)
+                Entry(item, System.nanoTime())
+            } else {
+                Entry(merge(previous.item, item), previous.enqueuedAtNanos)
+            }
+            if (!processing.contains(key)) {
+                enqueue(key)
+            }
+        }
+    }
+
+    fun getStats(): Stats {
+        val processedCount = processed.get()
+        return Stats(
+                synchronized(this) { pending.size },
+                inFlight.get(),
+                processedCount,
+                if (processedCount == 0L) 0L else TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / processedCount),
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get())
+        )
+    }
+
+    private suspend fun work() {
+        for (key in readyKeys) {
+            val entry = synchronized(this) {
+                queued.remove(key)
+                pending.remove(key)?.also { processing.add(key) }
+            } ?: continue
+
+            val waitNanos = System.nanoTime() - entry.enqueuedAtNanos
+            totalWaitNanos.addAndGet(waitNanos)
+            maxWaitNanos.accumulateAndGet(waitNanos, ::maxOf)
+            FlorkMetrics.workQueueDepthChanged(name, -1)
+            FlorkMetrics.workQueueWaited(name, entry.enqueuedAtNanos)
+
+            inFlight.incrementAndGet()
+            FlorkMetrics.workQueueInFlightChanged(name, 1)
+            try {
+                handler(key, entry.item)
+            } catch (e: CancellationException) {
+                // only stop working if the queue itself was cancelled
+                currentCoroutineContext().ensureActive()
+                LOG.debug("Processing of '{}' from {} queue was cancelled.", key, name)
+            } catch (e: Exception) {
+                LOG.error("Error processing '{}' from {} queue:", key, name, e)
+            } finally {
+                inFlight.decrementAndGet()
+                FlorkMetrics.workQueueInFlightChanged(name, -1)
+                processed.incrementAndGet()
+                done(key)
+            }
+        }
+    }
+
+    private fun done(key: String) {
+        synchronized(this) {
+            processing.remove(key)
+            if (pending.containsKey(key)) {
+                enqueue(key)
+            }
+        }
+    }
+
+    // must hold lock
+    private fun enqueue(key: String) {
+        if (queued.add(key)) {
+            readyKeys.trySend(key)
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import io.fabric8.kubernetes.client.KubernetesClientException
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.delay
+import java.net.HttpURLConnection
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+
+/**
+ * Retries with exponential backoff that suspend instead of blocking a thread,
+ * delays are jittered between 50% and 100% of the current backoff like in [ReconcileBackoff].
+ * Errors that aren't retryable are thrown immediately, retryable ones once the next attempt would start after the deadline.
+ */
+class RetryPolicy(
+        private val baseMillis: Long,
+        private val capMillis: Long,
+        private val deadlineMillis: Long,
+        private val isRetryable: (Exception) -> Boolean = ::isRetryableKubernetesError
+) {
+    companion object {
+        private const val MAX_EXPONENT = 30
+
+        private const val HTTP_TOO_MANY_REQUESTS = 429
+
+        @JvmField
+        val STATUS_PATCH = RetryPolicy(
+                RuntimeConstants.STATUS_PATCH_BACKOFF_BASE_MILLIS,
+                RuntimeConstants.STATUS_PATCH_BACKOFF_CAP_MILLIS,
+                RuntimeConstants.STATUS_PATCH_DEADLINE_MILLIS
+        )
+
+        /**
+         * Conflicts, throttling, server errors, and errors without a response (code 0) might succeed if retried.
+         */
+        @JvmStatic
+        fun isRetryableKubernetesError(e: Exception): Boolean {
+            if (e !is KubernetesClientException) {
+                return false
+            }
+            return when (e.code) {
+                0, HttpURLConnection.HTTP_CONFLICT, HTTP_TOO_MANY_REQUESTS -> true
+                else -> e.code >= HttpURLConnection.HTTP_INTERNAL_ERROR
+            }
+        }
+    }
+
+    /**
+     * Runs [block] until it succeeds, passing the number of previous attempts.
+     * [onRetry] is called before waiting for the next attempt.
+     */
+    suspend fun <R> run(onRetry: (attempt: Int, e: Exception, delayMillis: Long) -> Unit = { _, _, _ -> }, block: suspend (attempt: Int) -> R): R {
+        val deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis)
+        var attempt = 0
+        while (true) {
+            try {
+                return block(attempt)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                if (!isRetryable(e)) {
+                    throw e
+                }
+                attempt++
+                val delayMillis = getDelayMillis(attempt)
+                if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) - deadlineNanos > 0L) {
+                    throw e
+                }
+                onRetry(attempt, e, delayMillis)
+                delay(delayMillis)
+            }
+        }
+    }
+
+    fun getDelayMillis(attempt: Int): Long {
+        val exponent = (attempt - 1).coerceIn(0, MAX_EXPONENT)
+        val backoff = (baseMillis shl exponent).coerceIn(0L, capMillis)
+        val half = backoff / 2L
+        return half + (ThreadLocalRandom.current().nextDouble() * (backoff - half)).toLong()
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.node.ObjectNode
+import io.fabric8.kubernetes.api.model.HasMetadata
+import io.fabric8.kubernetes.client.CustomResource
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.KubernetesClientException
+import io.fabric8.kubernetes.client.dsl.base.OperationSupport
+import io.fabric8.kubernetes.client.utils.Serialization
+import io.fabric8.kubernetes.client.utils.URLUtils
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Sends only a resource's status to its status subresource as a JSON merge patch,
+ * whereas fabric8's patchStatus sends the whole resource, including the spec with its pod specs.
+ *
+ * Top-level status fields that are omitted when serialized (e.g. nulls) are sent as explicit nulls so that they're cleared.
+ * The resource version is kept as precondition, so patches based on outdated resources fail with a conflict like before.
+ */
+class StatusMergePatcher<T : CustomResource<*, *>>(private val k8sClient: KubernetesClient, private val clazz: Class<T>) {
+    companion object {
+        private val MAPPER = Serialization.jsonMapper()
+
+        private val STATUS_PROPERTIES = ConcurrentHashMap<Class<*>, List<String>>()
+
+        private fun getPropertyNames(statusClass: Class<*>): List<String> {
+            return STATUS_PROPERTIES.computeIfAbsent(statusClass) {
+                MAPPER.serializationConfig.introspect(MAPPER.constructType(it)).findProperties().map { property -> property.name }
+            }
+        }
+    }
+
+    fun createPatch(flinkResource: T): String {
+        val patch = MAPPER.createObjectNode()
+        flinkResource.metadata.resourceVersion?.let { resourceVersion ->
+            patch.putObject("metadata").put("resourceVersion", resourceVersion)
+        }
+
+        val status = flinkResource.status
+        if (status == null) {
+            patch.putNull("status")
+        } else {
+            val statusNode = MAPPER.valueToTree<ObjectNode>(status)
+            getPropertyNames(status.javaClass).forEach { name ->
+                if (!statusNode.has(name)) {
+                    statusNode.putNull(name)
+                }
+            }
+            patch.set<JsonNode>("status", statusNode)
+        }
+
+        return MAPPER.writeValueAsString(patch)
+    }
+
+    fun patchStatus(flinkResource: T): T {
+        val url = URLUtils.join(
+                k8sClient.masterUrl.toString(),
+                "apis",
+                HasMetadata.getGroup(clazz),
+                HasMetadata.getVersion(clazz),
+                "namespaces",
+                flinkResource.metadata.namespace,
+                HasMetadata.getPlural(clazz),
+                flinkResource.metadata.name,
+                "status"
+        )
+        val request = k8sClient.httpClient.newHttpRequestBuilder()
+                .uri(url)
+                .patch(OperationSupport.JSON_MERGE_PATCH, createPatch(flinkResource))
+                .build()
+
+        val response = try {
+            k8sClient.httpClient.send(request, String::class.java)
+        } catch (e: IOException) {
+            throw OperationSupport.requestException(request, e)
+        }
+        if (!response.isSuccessful) {
+            throw OperationSupport.requestFailure(request, OperationSupport.createStatus(response))
+        }
+        return Serialization.unmarshal(response.body(), clazz)
+    }
+}
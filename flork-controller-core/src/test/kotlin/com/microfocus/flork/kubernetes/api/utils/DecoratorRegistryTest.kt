@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import com.microfocus.flork.kubernetes.api.plugins.FlinkConfDecorator
+import com.microfocus.flork.kubernetes.api.v1.model.FlorkConf
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+import kotlin.io.path.createTempDirectory
+import kotlin.io.path.deleteExisting
+import kotlin.io.path.deleteIfExists
+
+class DecoratorRegistryTest {
+    class PluginDecorator : FlinkConfDecorator {
+        override fun priority() = 10
+
+        override fun decorate(flinkConf: MutableMap<String, Any>, florkConf: FlorkConf): MutableMap<String, Any> {
+            flinkConf["plugin.decorated"] = true
+            return flinkConf
+        }
+    }
+
+    // the class itself is on the test classpath, the jar only registers it
+    private fun writePluginJar(jar: Path) {
+        JarOutputStream(Files.newOutputStream(jar)).use { os ->
+            os.putNextEntry(JarEntry("META-INF/services/${FlinkConfDecorator::class.java.name}"))
+            os.write(PluginDecorator::class.java.name.toByteArray())
+            os.closeEntry()
+        }
+    }
+
+    private fun writeBrokenPluginJar(jar: Path) {
+        JarOutputStream(Files.newOutputStream(jar)).use { os ->
+            os.putNextEntry(JarEntry("META-INF/services/${FlinkConfDecorator::class.java.name}"))
+            os.write("com.example.MissingDecorator".toByteArray())
+            os.closeEntry()
+        }
+    }
+
+    @Test
+    fun `plugins are reloaded when their jars change`() {
+        val pluginsDir = createTempDirectory(prefix = "flork_plugins_")
+        val jar = pluginsDir.resolve("plugin.jar")
+        try {
+            val registry = DecoratorRegistry(pluginsDir, Long.MAX_VALUE)
+            val initial = registry.get()
+            Assertions.assertTrue(initial.flinkConfDecorators.none { it is PluginDecorator })
+            Assertions.assertFalse(registry.reloadIfChanged())
+            Assertions.assertSame(initial, registry.get())
+
+            writePluginJar(jar)
+            Assertions.assertTrue(registry.reloadIfChanged())
+            val withPlugin = registry.get()
+            Assertions.assertEquals(initial.generation + 1L, withPlugin.generation)
+            Assertions.assertEquals(1, withPlugin.flinkConfDecorators.count { it is PluginDecorator })
+            Assertions.assertNotEquals(initial.fingerprint, withPlugin.fingerprint)
+
+            jar.deleteExisting()
+            Assertions.assertTrue(registry.reloadIfChanged())
+            Assertions.assertTrue(registry.get().flinkConfDecorators.none { it is PluginDecorator })
+        } finally {
+            jar.deleteIfExists()
+            pluginsDir.deleteIfExists()
+        }
+    }
+
+    @Test
+    fun `previous decorators are kept if plugins cannot be loaded`() {
+        val pluginsDir = createTempDirectory(prefix = "flork_plugins_")
+        val jar = pluginsDir.resolve("broken.jar")
+        try {
+            val registry = DecoratorRegistry(pluginsDir, Long.MAX_VALUE)
+            val initial = registry.get()
+
+            writeBrokenPluginJar(jar)
+            Assertions.assertFalse(registry.reloadIfChanged())
+            Assertions.assertSame(initial, registry.get())
+        } finally {
+            jar.deleteIfExists()
+            pluginsDir.deleteIfExists()
+        }
+    }
+
+    @Test
+    fun `classpath decorators are used if plugins cannot be loaded initially`() {
+        val pluginsDir = createTempDirectory(prefix = "flork_plugins_")
+        val jar = pluginsDir.resolve("plugin.jar")
+        try {
+            writeBrokenPluginJar(jar)
+            val registry = DecoratorRegistry(pluginsDir, Long.MAX_VALUE)
+            val initial = registry.get()
+            Assertions.assertTrue(initial.flinkConfDecorators.none { it is PluginDecorator })
+
+            writePluginJar(jar)
+            Assertions.assertTrue(registry.reloadIfChanged())
+            Assertions.assertEquals(1, registry.get().flinkConfDecorators.count { it is PluginDecorator })
+        } finally {
+            jar.deleteIfExists()
+            pluginsDir.deleteIfExists()
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import com.microfocus.flork.kubernetes.api.constants.RuntimeConstants
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobSpec
+import kotlinx.coroutines.runBlocking
+import org.apache.flink.configuration.CoreOptions
+import org.apache.flink.configuration.GlobalConfiguration
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import kotlin.io.path.exists
+
+class FlinkConfRenderCacheTest {
+    private fun createJob(name: String, parallelism: Int) = FlinkJobCustomResource().apply {
+        metadata.apply {
+            namespace = "flork"
+            this.name = name
+        }
+        spec = FlinkJobSpec().apply {
+            flinkConf = mutableMapOf<String, Any>("parallelism.default" to parallelism)
+        }
+    }
+
+    @AfterEach
+    fun tearDown() = runBlocking {
+        FlinkConfRenderCache.reset()
+    }
+
+    @Test
+    fun `unchanged specs are rendered once`() = runBlocking<Unit> {
+        val first = FlinkConfRenderCache.acquire(createJob("foo", 2))
+        val second = FlinkConfRenderCache.acquire(createJob("foo", 2))
+        Assertions.assertSame(first, second)
+        Assertions.assertTrue(first.confPath.resolve(GlobalConfiguration.FLINK_CONF_FILENAME).exists())
+        Assertions.assertEquals(2, first.getFlinkConfig().get(CoreOptions.DEFAULT_PARALLELISM))
+
+        // callers get their own copy
+        first.getFlinkConfig().set(CoreOptions.DEFAULT_PARALLELISM, 3)
+        Assertions.assertEquals(2, second.getFlinkConfig().get(CoreOptions.DEFAULT_PARALLELISM))
+
+        val changed = FlinkConfRenderCache.acquire(createJob("foo", 4))
+        Assertions.assertNotEquals(first.hash, changed.hash)
+        Assertions.assertNotEquals(first.confPath, changed.confPath)
+
+        listOf(first, second, changed).forEach { FlinkConfRenderCache.release(it) }
+        Assertions.assertTrue(first.confPath.exists())
+
+        FlinkConfRenderCache.reset()
+        Assertions.assertFalse(first.confPath.exists())
+        Assertions.assertFalse(changed.confPath.exists())
+    }
+
+    @Test
+    fun `least recently used entries are evicted once released`() = runBlocking<Unit> {
+        val inUse = FlinkConfRenderCache.acquire(createJob("in-use", 1))
+        for (i in 0 until RuntimeConstants.RENDER_CACHE_SIZE) {
+            FlinkConfRenderCache.release(FlinkConfRenderCache.acquire(createJob("job-$i", 1)))
+        }
+        Assertions.assertEquals(RuntimeConstants.RENDER_CACHE_SIZE, FlinkConfRenderCache.getSize())
+
+        // evicted but still in use
+        Assertions.assertTrue(inUse.confPath.exists())
+        FlinkConfRenderCache.release(inUse)
+        Assertions.assertFalse(inUse.confPath.exists())
+    }
+}
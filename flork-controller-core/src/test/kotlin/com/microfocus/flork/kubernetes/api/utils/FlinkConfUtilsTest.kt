@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobSpec
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder
+import kotlinx.coroutines.runBlocking
+import org.apache.flink.configuration.GlobalConfiguration
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import kotlin.io.path.createTempDirectory
+
+class FlinkConfUtilsTest {
+    @Test
+    fun `in-memory configuration matches the one loaded from disk`() = runBlocking {
+        val flinkJob = FlinkJobCustomResource().apply {
+            metadata.apply {
+                namespace = "flork"
+                name = "foo"
+            }
+            spec = FlinkJobSpec().apply {
+                flinkConf = mutableMapOf<String, Any>(
+                        "state.savepoints.dir" to "s3://bucket/savepoints",
+                        "security.ssl.rest.enabled" to true,
+                        "env.java.opts" to "-Dfoo=bar -Dbaz=\"quoted value\"",
+                        "high-availability.cluster-id" to "01234",
+                        "parallelism.default" to 4
+                )
+                florkConf.shadowConfigFiles = true
+            }
+        }
+
+        val confDir = createTempDirectory(prefix = "flork_test_")
+        try {
+            FlinkConfUtils.writeConfYamlTo(flinkJob, confDir)
+            val fromDisk = GlobalConfiguration.loadConfiguration(confDir.toString())
+            val inMemory = FlinkConfUtils.loadConfigurationFromSpec(flinkJob, confDir.toString())
+            Assertions.assertEquals(fromDisk.toMap(), inMemory.toMap())
+        } finally {
+            FlinkConfUtils.cleanFiles(confDir)
+        }
+    }
+
+    @Test
+    fun `pod templates do not modify the spec`() = runBlocking {
+        val flinkJob = FlinkJobCustomResource().apply {
+            metadata.apply {
+                namespace = "flork"
+                name = "foo"
+            }
+            spec = FlinkJobSpec().apply {
+                jobManagerPodMeta = ObjectMetaBuilder().addToAnnotations("foo", "bar").build()
+            }
+        }
+
+        val confDir = createTempDirectory(prefix = "flork_test_")
+        try {
+            FlinkConfUtils.prepareConfFilesFromSpec(flinkJob, confDir)
+            Assertions.assertEquals(mapOf("foo" to "bar"), flinkJob.spec.jobManagerPodMeta.annotations)
+        } finally {
+            FlinkConfUtils.cleanFiles(confDir)
+        }
+    }
+}
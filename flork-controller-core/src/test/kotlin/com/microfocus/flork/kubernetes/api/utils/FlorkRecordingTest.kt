@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import jdk.jfr.consumer.RecordingFile
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.nio.file.Files
+import kotlin.io.path.deleteIfExists
+
+class FlorkRecordingTest {
+    @AfterEach
+    fun tearDown() {
+        FlorkRecording.reset()
+    }
+
+    @Test
+    fun `events are dumped with their resource details`() {
+        Assertions.assertTrue(FlorkRecording.start())
+
+        ShutdownEvent().describe("flork/foo", 3L, "DEPLOYED").record { }
+        val event = ShutdownEvent().describe("flork/foo", 3L, "DEPLOYED")
+        event.record {
+            event.savepointPath = "s3://savepoints/savepoint-1"
+        }
+
+        val target = Files.createTempFile("flork-", ".jfr")
+        try {
+            Assertions.assertTrue(FlorkRecording.dump(target))
+            val events = RecordingFile.readAllEvents(target).filter { it.eventType.name == "com.microfocus.flork.Shutdown" }
+            Assertions.assertEquals(2, events.size)
+            events.forEach {
+                Assertions.assertEquals("flork/foo", it.getString("resourceKey"))
+                Assertions.assertEquals(3L, it.getLong("generation"))
+                Assertions.assertEquals("DEPLOYED", it.getString("phase"))
+                Assertions.assertEquals("Flork", it.eventType.categoryNames.single())
+            }
+            Assertions.assertNull(events.first().getString("savepointPath"))
+            Assertions.assertEquals("s3://savepoints/savepoint-1", events.last().getString("savepointPath"))
+        } finally {
+            target.deleteIfExists()
+        }
+    }
+}
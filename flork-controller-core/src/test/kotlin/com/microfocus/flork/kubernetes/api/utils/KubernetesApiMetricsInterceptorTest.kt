@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.utils
+
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder
+import io.fabric8.kubernetes.api.model.ConfigMapListBuilder
+import io.fabric8.kubernetes.client.DefaultKubernetesClient
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.KubernetesClientException
+import io.fabric8.kubernetes.client.okhttp.OkHttpClientFactory
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer
+import io.micrometer.core.instrument.Metrics
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.jupiter.api.*
+
+class KubernetesApiMetricsInterceptorTest {
+    companion object {
+        private val KUBERNETES_SERVER = KubernetesServer(true, false)
+        private val METER_REGISTRY = SimpleMeterRegistry()
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.before()
+            Metrics.addRegistry(METER_REGISTRY)
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            Metrics.removeRegistry(METER_REGISTRY)
+            KUBERNETES_SERVER.after()
+        }
+    }
+
+    private fun createClient(): KubernetesClient {
+        val config = KUBERNETES_SERVER.client.configuration
+        val httpClient = object : OkHttpClientFactory() {
+            override fun additionalConfig(builder: OkHttpClient.Builder) {
+                builder.addInterceptor(KubernetesApiMetricsInterceptor())
+            }
+        }.createHttpClient(config)
+        return DefaultKubernetesClient(httpClient, config)
+    }
+
+    @Test
+    fun `paths are mapped to namespace and resource`() {
+        Assertions.assertEquals(Triple("flork", "configmaps", true),
+                KubernetesApiMetricsInterceptor.parsePath("/api/v1/namespaces/flork/configmaps/foo"))
+        Assertions.assertEquals(Triple("flork", "flinkjobs/status", true),
+                KubernetesApiMetricsInterceptor.parsePath("/apis/flork.microfocus.com/v1/namespaces/flork/flinkjobs/foo/status"))
+        Assertions.assertEquals(Triple("", "leases", false),
+                KubernetesApiMetricsInterceptor.parsePath("/apis/coordination.k8s.io/v1/leases"))
+        Assertions.assertEquals(Triple("", "namespaces", true),
+                KubernetesApiMetricsInterceptor.parsePath("/api/v1/namespaces/flork"))
+
+        Assertions.assertEquals("deletecollection", KubernetesApiMetricsInterceptor.getVerb("DELETE", false, false))
+        Assertions.assertEquals("watch", KubernetesApiMetricsInterceptor.getVerb("GET", true, false))
+    }
+
+    @Test
+    fun `requests are recorded by verb, resource and namespace`() {
+        KUBERNETES_SERVER.expect().get().withPath("/api/v1/namespaces/flork/configmaps/foo")
+                .andReturn(200, ConfigMapBuilder().withNewMetadata().withName("foo").endMetadata().build())
+                .times(2)
+        KUBERNETES_SERVER.expect().get().withPath("/api/v1/namespaces/flork/configmaps")
+                .andReturn(200, ConfigMapListBuilder().build())
+                .once()
+        KUBERNETES_SERVER.expect().get().withPath("/api/v1/namespaces/flork/configmaps/bar")
+                .andReturn(429, "")
+                .once()
+
+        createClient().use { k8sClient ->
+            val configMaps = k8sClient.configMaps().inNamespace("flork")
+            configMaps.withName("foo").get()
+            configMaps.withName("foo").get()
+            configMaps.list()
+            Assertions.assertThrows(KubernetesClientException::class.java) {
+                configMaps.withName("bar").get()
+            }
+        }
+
+        val gets = METER_REGISTRY.find(FlorkMetrics.KUBERNETES_API_REQUESTS)
+                .tags("verb", "get", "resource", "configmaps", "namespace", "flork", "status", "2xx")
+                .timer()
+        Assertions.assertEquals(2L, gets?.count())
+        val lists = METER_REGISTRY.find(FlorkMetrics.KUBERNETES_API_REQUESTS)
+                .tags("verb", "list", "resource", "configmaps", "namespace", "flork")
+                .timer()
+        Assertions.assertEquals(1L, lists?.count())
+        val throttled = METER_REGISTRY.find(FlorkMetrics.KUBERNETES_API_ERRORS)
+                .tags("verb", "get", "resource", "configmaps", "code", "429")
+                .counter()
+        Assertions.assertEquals(1.0, throttled?.count())
+    }
+
+    @Test
+    fun `only watches re-established without listing are reconnects`() {
+        val server = MockWebServer()
+        server.setDispatcher(object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest) = MockResponse().setBody("{}")
+        })
+        server.start()
+        try {
+            val httpClient = OkHttpClient.Builder().addInterceptor(KubernetesApiMetricsInterceptor()).build()
+            fun get(query: String) {
+                httpClient.newCall(Request.Builder().url(server.url("/api/v1/namespaces/reconnects/configmaps?$query")).build()).execute().close()
+            }
+
+            // e.g. an informer
+            get("labelSelector=app%3Dfoo")
+            get("labelSelector=app%3Dfoo&resourceVersion=1&watch=true")
+            // fabric8 re-establishing it
+            get("labelSelector=app%3Dfoo&resourceVersion=5&watch=true")
+            // the same informer created again
+            get("labelSelector=app%3Dfoo&limit=500")
+            get("labelSelector=app%3Dfoo&resourceVersion=7&watch=true")
+            // a different selector
+            get("labelSelector=app%3Dbar")
+            get("labelSelector=app%3Dbar&resourceVersion=7&watch=true")
+
+            val reconnects = METER_REGISTRY.find(FlorkMetrics.KUBERNETES_WATCH_RECONNECTS)
+                    .tags("resource", "configmaps", "namespace", "reconnects")
+                    .counter()
+            Assertions.assertEquals(1.0, reconnects?.count())
+        } finally {
+            server.shutdown()
+        }
+    }
+}
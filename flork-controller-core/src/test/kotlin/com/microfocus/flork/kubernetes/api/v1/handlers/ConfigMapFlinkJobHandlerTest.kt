@@ -0,0 +1,181 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.handlers
+
+import com.microfocus.flork.kubernetes.api.constants.FlorkConstants
+import com.microfocus.flork.kubernetes.api.v1.model.*
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.FlinkJobReconciler
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.factories.FlinkJobReconcilerFactory
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.ConfigMapFlinkResourceOperations
+import io.fabric8.kubernetes.api.model.ConfigMap
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder
+import io.fabric8.kubernetes.api.model.ObjectMeta
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.dsl.base.PatchContext
+import io.fabric8.kubernetes.client.dsl.base.PatchType
+import io.fabric8.kubernetes.client.informers.cache.Lister
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.*
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+
+class ConfigMapFlinkJobHandlerTest {
+    companion object {
+        private val KUBERNETES_SERVER = KubernetesServer(true, true)
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.before()
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            KUBERNETES_SERVER.after()
+        }
+    }
+
+    // only the status config maps are under test, not reconciliation
+    private class NopReconcilerFactory : FlinkJobReconcilerFactory() {
+        override fun create(k8sClient: KubernetesClient, lister: AtomicReference<Lister<FlinkJobCustomResource>?>): FlinkJobReconciler {
+            return object : FlinkJobReconciler {
+                override fun reconcile(flinkJob: FlinkJobCustomResource) {}
+
+                override fun delete(flinkJob: FlinkJobCustomResource) {}
+            }
+        }
+
+        override fun stopAll() {}
+    }
+
+    private val k8sClient = KUBERNETES_SERVER.client
+    private val leading = AtomicBoolean(false)
+    private val handler = ConfigMapFlinkJobHandler(k8sClient, NopReconcilerFactory()) { leading.get() }
+
+    @AfterEach
+    fun stopInformer() {
+        handler.innerInformer.close()
+    }
+
+    private fun createJobConfigMap(name: String): ConfigMap {
+        val flinkJob = FlinkJobCustomResource().apply {
+            metadata = ObjectMetaBuilder()
+                    .withNamespace(k8sClient.namespace)
+                    .withName(name)
+                    .build()
+        }
+        return k8sClient.configMaps().inNamespace(k8sClient.namespace).create(ConfigMapBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .addToLabels(FlorkConstants.FLORK_FJ_CM_LABEL, "true")
+                .endMetadata()
+                .addToData("customResource", HandlerUtils.MAPPER.writeValueAsString(flinkJob))
+                .build())
+    }
+
+    private fun touchJobConfigMap(cm: ConfigMap): ConfigMap {
+        return k8sClient.configMaps().inNamespace(k8sClient.namespace).withName(cm.metadata.name).edit {
+            ConfigMapBuilder(it).addToData("touched", System.nanoTime().toString()).build()
+        }
+    }
+
+    private fun getStatusConfigMap(cm: ConfigMap): ConfigMap {
+        return k8sClient.configMaps().inNamespace(k8sClient.namespace).withName(ConfigMapFlinkJobHandler.getStatusConfigMapName(cm)).get()
+    }
+
+    private fun getCachedStatusConfigMap(cm: ConfigMap): ConfigMap? {
+        return Lister(handler.innerInformer.indexer, k8sClient.namespace).get(ConfigMapFlinkJobHandler.getStatusConfigMapName(cm))
+    }
+
+    // like a failure reported by the leader earlier
+    private fun addException(cm: ConfigMap) {
+        k8sClient.configMaps()
+                .inNamespace(k8sClient.namespace)
+                .withName(ConfigMapFlinkJobHandler.getStatusConfigMapName(cm))
+                .patch(PatchContext.of(PatchType.JSON_MERGE), """{"metadata":{"labels":{"${FlorkConstants.METADATA_CM_VALIDITY_LABEL}":"false"}},"data":{"exception":"boom"}}""")
+    }
+
+    private fun getValidity(statusCm: ConfigMap) = statusCm.metadata.labels[FlorkConstants.METADATA_CM_VALIDITY_LABEL]
+
+    private fun getCrMeta(statusCm: ConfigMap) = HandlerUtils.unmarshall<ObjectMeta>(statusCm.data[ConfigMapFlinkJobHandler.STATUS_CM_META_KEY])
+
+    private suspend fun awaitCondition(condition: () -> Boolean) {
+        while (!condition()) {
+            delay(50L)
+        }
+    }
+
+    @Test
+    @Timeout(value = 20L, unit = TimeUnit.SECONDS)
+    fun `status CM is only patched by the leader and catches up after its first status patch`() = runBlocking<Unit> {
+        val cm = createJobConfigMap("foo")
+        handler.onAdd(cm)
+
+        var statusCm = getStatusConfigMap(cm)
+        Assertions.assertEquals("false", getValidity(statusCm))
+        Assertions.assertNull(getCrMeta(statusCm).resourceVersion)
+
+        addException(cm)
+        val updated = touchJobConfigMap(cm)
+        handler.onUpdate(cm, updated)
+        statusCm = getStatusConfigMap(cm)
+        Assertions.assertEquals("boom", statusCm.data["exception"])
+        Assertions.assertNull(getCrMeta(statusCm).resourceVersion)
+
+        leading.set(true)
+        val flinkJob = ConfigMapFlinkJobHandler.reconstructUnderlyingResource(updated, statusCm)
+        flinkJob.status.florkPhase = FlorkPhase.DEPLOYING
+        ConfigMapFlinkResourceOperations<FlinkJobSpec, FlinkJobStatus, FlinkJobCustomResource>(k8sClient).patchStatus(flinkJob)
+
+        // the informer notices the status patch and the metadata is patched too
+        awaitCondition { getValidity(getStatusConfigMap(cm)) == updated.metadata.resourceVersion }
+        statusCm = getStatusConfigMap(cm)
+        Assertions.assertEquals(updated.metadata.resourceVersion, getCrMeta(statusCm).resourceVersion)
+        Assertions.assertNull(statusCm.data["exception"])
+        Assertions.assertEquals(FlorkPhase.DEPLOYING,
+                HandlerUtils.unmarshall<FlinkJobStatus>(statusCm.data[ConfigMapFlinkJobHandler.STATUS_CM_STATUS_KEY]).florkPhase)
+    }
+
+    @Test
+    @Timeout(value = 20L, unit = TimeUnit.SECONDS)
+    fun `leader clears exceptions whether or not the cached status CM shows them`() = runBlocking<Unit> {
+        leading.set(true)
+        val cm = createJobConfigMap("bar")
+        handler.onAdd(cm)
+        Assertions.assertEquals(cm.metadata.resourceVersion, getValidity(getStatusConfigMap(cm)))
+
+        addException(cm)
+        awaitCondition { getCachedStatusConfigMap(cm)?.data?.containsKey("exception") == true }
+        val updated = touchJobConfigMap(cm)
+        handler.onUpdate(cm, updated)
+        var statusCm = getStatusConfigMap(cm)
+        Assertions.assertNull(statusCm.data["exception"])
+        Assertions.assertEquals(updated.metadata.resourceVersion, getValidity(statusCm))
+
+        // without waiting for the informer this time
+        addException(cm)
+        val updatedAgain = touchJobConfigMap(updated)
+        handler.onUpdate(updated, updatedAgain)
+        statusCm = getStatusConfigMap(cm)
+        Assertions.assertNull(statusCm.data["exception"])
+        Assertions.assertEquals(updatedAgain.metadata.resourceVersion, getValidity(statusCm))
+    }
+}
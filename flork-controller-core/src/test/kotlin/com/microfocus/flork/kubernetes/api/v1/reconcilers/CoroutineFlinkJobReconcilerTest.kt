@@ -0,0 +1,190 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers
+
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobSpec
+import com.microfocus.flork.kubernetes.api.v1.model.FlorkPhase
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkHighAvailabilityCleanup
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkSharedResources
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder
+import io.fabric8.kubernetes.client.DefaultKubernetesClient
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.okhttp.OkHttpClientFactory
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer
+import io.micrometer.core.instrument.Metrics
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.*
+import okhttp3.OkHttpClient
+import org.apache.flink.configuration.HighAvailabilityOptions
+import org.junit.jupiter.api.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+class CoroutineFlinkJobReconcilerTest {
+    companion object {
+        private val KUBERNETES_SERVER = KubernetesServer(true, true)
+        private val METER_REGISTRY = SimpleMeterRegistry()
+
+        private const val KEY = "flork/foo"
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.before()
+            Metrics.addRegistry(METER_REGISTRY)
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            Metrics.removeRegistry(METER_REGISTRY)
+            KUBERNETES_SERVER.after()
+        }
+    }
+
+    private val deletionStarted = CountDownLatch(1)
+    private val deletionAllowed = CountDownLatch(1)
+
+    @AfterEach
+    fun cleanUp() {
+        deletionAllowed.countDown()
+        CoroutineFlinkJobReconciler.resetScope()
+        FlinkSharedResources.reset()
+        KUBERNETES_SERVER.client.configMaps().inNamespace("flork").withLabels(FlinkHighAvailabilityCleanup.getLabels("foo")).delete()
+    }
+
+    // the API server only carries out the deletion of HA config maps once it's allowed
+    private fun createClient(): KubernetesClient {
+        val config = KUBERNETES_SERVER.client.configuration
+        val httpClient = object : OkHttpClientFactory() {
+            override fun additionalConfig(builder: OkHttpClient.Builder) {
+                builder.addInterceptor { chain ->
+                    val request = chain.request()
+                    if (request.method() == "DELETE" && request.url().encodedPath().endsWith("/configmaps")) {
+                        deletionStarted.countDown()
+                        deletionAllowed.await()
+                    }
+                    chain.proceed(request)
+                }
+            }
+        }.createHttpClient(config)
+        return DefaultKubernetesClient(httpClient, config)
+    }
+
+    private fun createHighAvailabilityConfigMap() {
+        KUBERNETES_SERVER.client.configMaps().inNamespace("flork").create(ConfigMapBuilder()
+                .withNewMetadata()
+                .withName("foo-dispatcher-leader")
+                .withNamespace("flork")
+                .withLabels<String, String>(FlinkHighAvailabilityCleanup.getLabels("foo"))
+                .endMetadata()
+                .build())
+    }
+
+    // a terminal phase makes the phaser stop by itself
+    private fun createJob(generation: Long) = FlinkJobCustomResource().apply {
+        metadata = ObjectMetaBuilder()
+                .withNamespace("flork")
+                .withName("foo")
+                .withGeneration(generation)
+                .build()
+        spec = FlinkJobSpec().apply {
+            flinkConf = mutableMapOf<String, Any>(HighAvailabilityOptions.HA_MODE.key() to "kubernetes")
+        }
+        status.florkPhase = FlorkPhase.COMPLETED
+    }
+
+    private fun getProcessed() = CoroutineFlinkJobReconciler.getWorkQueueStats().processed
+
+    private fun hasPhaser() = CoroutineFlinkJobReconciler.getPhaserSnapshots().any { it.key == KEY }
+
+    private fun getHighAvailabilityCleanups() = METER_REGISTRY.find(FlorkMetrics.HA_CLEANUP_DURATION).timers().sumOf { it.count() }
+
+    private suspend fun awaitCondition(condition: () -> Boolean) {
+        while (!condition()) {
+            delay(50L)
+        }
+    }
+
+    @Test
+    fun `pending deletions are processed before anything else`() {
+        val first = createJob(1L)
+        val second = createJob(2L)
+
+        val updated = CoroutineFlinkJobReconciler.Request(null, first).then(CoroutineFlinkJobReconciler.Request(null, second))
+        Assertions.assertNull(updated.deleted)
+        Assertions.assertSame(second, updated.latest)
+
+        val deleted = CoroutineFlinkJobReconciler.Request(null, first).then(CoroutineFlinkJobReconciler.Request(first, null))
+        Assertions.assertSame(first, deleted.deleted)
+        Assertions.assertNull(deleted.latest)
+
+        val recreated = deleted.then(CoroutineFlinkJobReconciler.Request(null, second))
+        Assertions.assertSame(first, recreated.deleted)
+        Assertions.assertSame(second, recreated.latest)
+    }
+
+    @Test
+    @Timeout(value = 30L, unit = TimeUnit.SECONDS)
+    fun `re-creation waits for the HA cleanup without holding a worker`() = runBlocking<Unit> {
+        createHighAvailabilityConfigMap()
+        createClient().use { k8sClient ->
+            val reconciler = CoroutineFlinkJobReconciler(k8sClient, AtomicReference(null), true)
+            val processed = getProcessed()
+
+            reconciler.delete(createJob(1L))
+            runInterruptible(Dispatchers.IO) { deletionStarted.await() }
+            reconciler.reconcile(createJob(2L))
+
+            awaitCondition { getProcessed() == processed + 2L }
+            Assertions.assertEquals(0, CoroutineFlinkJobReconciler.getWorkQueueStats().inFlight)
+            Assertions.assertFalse(hasPhaser())
+
+            deletionAllowed.countDown()
+            awaitCondition { hasPhaser() }
+            Assertions.assertEquals(processed + 3L, getProcessed())
+        }
+    }
+
+    @Test
+    @Timeout(value = 30L, unit = TimeUnit.SECONDS)
+    fun `deletion supersedes a re-creation waiting for the HA cleanup`() = runBlocking<Unit> {
+        createHighAvailabilityConfigMap()
+        createClient().use { k8sClient ->
+            val reconciler = CoroutineFlinkJobReconciler(k8sClient, AtomicReference(null), true)
+            val processed = getProcessed()
+            val cleanups = getHighAvailabilityCleanups()
+
+            reconciler.delete(createJob(1L))
+            runInterruptible(Dispatchers.IO) { deletionStarted.await() }
+            reconciler.reconcile(createJob(2L))
+            awaitCondition { getProcessed() == processed + 2L }
+            reconciler.delete(createJob(2L))
+            awaitCondition { getProcessed() == processed + 3L }
+
+            deletionAllowed.countDown()
+            awaitCondition { getHighAvailabilityCleanups() == cleanups + 2L }
+            // a re-added request would have been queued when the first cleanup completed
+            delay(200L)
+            Assertions.assertEquals(processed + 3L, getProcessed())
+            Assertions.assertFalse(hasPhaser())
+        }
+    }
+}
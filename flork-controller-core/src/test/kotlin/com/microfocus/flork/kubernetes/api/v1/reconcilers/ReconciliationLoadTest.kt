@@ -0,0 +1,274 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.node.ObjectNode
+import com.microfocus.flork.kubernetes.api.v1.handlers.FlinkJobHandler
+import com.microfocus.flork.kubernetes.api.v1.handlers.HandlerUtils
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobSpec
+import com.microfocus.flork.kubernetes.api.v1.model.FlorkPhase
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.factories.FlinkJobReconcilerFactory
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkSharedResources
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.dsl.base.CustomResourceDefinitionContext
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler
+import io.fabric8.kubernetes.client.informers.cache.Cache
+import io.fabric8.kubernetes.client.informers.cache.Lister
+import io.fabric8.kubernetes.client.server.mock.KubernetesCrudDispatcher
+import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer
+import io.fabric8.kubernetes.client.utils.Serialization
+import io.fabric8.mockwebserver.Context
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.jupiter.api.*
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Drives many jobs through [FlinkJobHandler] and [CoroutineFlinkJobReconciler] against the mock API server,
+ * until all of them reach [FlorkPhase.DEPLOYING], and logs throughput, latency and resource usage.
+ * Flink's cluster deployer talks to the same mock server, so every API request of the creation phase is counted.
+ * The mock server handles one request at a time, which bounds throughput for large numbers of jobs,
+ * and it runs in the same JVM, so the reported heap includes the resources it stores.
+ *
+ * Not part of the regular build, run with e.g. `./gradlew :flork-controller-core:loadTest -PloadTestJobs=1000`.
+ */
+@Tag("load")
+class ReconciliationLoadTest {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(ReconciliationLoadTest::class.java)
+
+        private val FLINK_JOB_CONTEXT = CustomResourceDefinitionContext.fromCustomResourceType(FlinkJobCustomResource::class.java)
+        private val KUBERNETES_SERVER = KubernetesMockServer(Context(), MockWebServer(), HashMap(), LoadTestDispatcher(), true)
+
+        private const val NAMESPACE = "flork"
+
+        private val JOBS = System.getProperty("flork.loadTest.jobs")?.toIntOrNull() ?: 100
+
+        private lateinit var k8sClient: KubernetesClient
+        private lateinit var kubeConfig: Path
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.init()
+            k8sClient = KUBERNETES_SERVER.createClient()
+            kubeConfig = Files.createTempFile("flork-load-test", ".kubeconfig")
+            Files.writeString(kubeConfig, """
+                apiVersion: v1
+                kind: Config
+                clusters:
+                - name: mock
+                  cluster:
+                    server: ${k8sClient.masterUrl}
+                    insecure-skip-tls-verify: true
+                contexts:
+                - name: mock
+                  context:
+                    cluster: mock
+                    namespace: $NAMESPACE
+                    user: mock
+                current-context: mock
+                users:
+                - name: mock
+                  user:
+                    token: mock
+            """.trimIndent())
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            FlinkJobReconcilerFactory.stopFactories()
+            FlinkSharedResources.reset()
+            k8sClient.close()
+            KUBERNETES_SERVER.destroy()
+            Files.deleteIfExists(kubeConfig)
+        }
+    }
+
+    // the CRUD dispatcher isn't thread-safe, and it increases the generation when merge-patching the status subresource,
+    // which would trigger re-deployments, so those patches are applied as status updates
+    private class LoadTestDispatcher : Dispatcher() {
+        private val delegate = KubernetesCrudDispatcher(listOf(CustomResourceDefinitionContext.Builder()
+                .withGroup(FLINK_JOB_CONTEXT.group)
+                .withVersion(FLINK_JOB_CONTEXT.version)
+                .withPlural(FLINK_JOB_CONTEXT.plural)
+                .withScope(FLINK_JOB_CONTEXT.scope)
+                .withKind(FLINK_JOB_CONTEXT.kind)
+                .withStatusSubresource(true)
+                .build()))
+
+        @Synchronized
+        override fun dispatch(request: RecordedRequest): MockResponse {
+            val path = request.path
+            if (request.method != "PATCH" || !path.endsWith("/status")) {
+                return delegate.dispatch(request)
+            }
+
+            val current = delegate.handleGet(path.removeSuffix("/status"))
+            if (!current.status.contains(" 200 ")) {
+                return current
+            }
+            val resource = Serialization.jsonMapper().readTree(current.getBody()!!.readUtf8()) as ObjectNode
+            val patch = Serialization.jsonMapper().readTree(request.body.readUtf8())
+            resource.set<JsonNode>("status", mergePatch(resource.get("status"), patch.get("status")))
+            return delegate.handleUpdate(path, Serialization.asJson(resource))
+        }
+
+        // RFC 7386
+        private fun mergePatch(target: JsonNode?, patch: JsonNode?): JsonNode? {
+            if (patch !is ObjectNode) {
+                return patch
+            }
+            val merged = if (target is ObjectNode) target.deepCopy() else Serialization.jsonMapper().createObjectNode()
+            patch.fields().forEach { (key, value) ->
+                if (value.isNull) {
+                    merged.remove(key)
+                } else {
+                    merged.set<JsonNode>(key, mergePatch(merged.get(key), value))
+                }
+            }
+            return merged
+        }
+    }
+
+    private class MeasuringFactory : FlinkJobReconcilerFactory() {
+        lateinit var lister: AtomicReference<Lister<FlinkJobCustomResource>?>
+
+        override fun create(k8sClient: KubernetesClient, lister: AtomicReference<Lister<FlinkJobCustomResource>?>): FlinkJobReconciler {
+            this.lister = lister
+            return CoroutineFlinkJobReconciler(k8sClient, lister, true)
+        }
+
+        override fun stopAll() {
+            CoroutineFlinkJobReconciler.resetScope()
+        }
+    }
+
+    private class MeasuringHandler(private val delegate: FlinkJobHandler) : ResourceEventHandler<FlinkJobCustomResource> {
+        val events = AtomicLong(0L)
+        val deployingAtNanos: ConcurrentHashMap<String, Long> = ConcurrentHashMap()
+
+        override fun onAdd(obj: FlinkJobCustomResource) {
+            events.incrementAndGet()
+            delegate.onAdd(obj)
+        }
+
+        override fun onUpdate(oldObj: FlinkJobCustomResource?, newObj: FlinkJobCustomResource) {
+            events.incrementAndGet()
+            if (newObj.status?.florkPhase == FlorkPhase.DEPLOYING) {
+                deployingAtNanos.putIfAbsent(Cache.metaNamespaceKeyFunc(newObj), System.nanoTime())
+            }
+            delegate.onUpdate(oldObj, newObj)
+        }
+
+        override fun onDelete(obj: FlinkJobCustomResource, deletedFinalStateUnknown: Boolean) {
+            events.incrementAndGet()
+            delegate.onDelete(obj, deletedFinalStateUnknown)
+        }
+    }
+
+    private fun createJob(name: String): FlinkJobCustomResource {
+        return FlinkJobCustomResource().apply {
+            metadata = ObjectMetaBuilder()
+                    .withNamespace(NAMESPACE)
+                    .withName(name)
+                    .build()
+            spec = FlinkJobSpec().apply {
+                jobClassName = "com.example.StreamingJob"
+                flinkConf = mutableMapOf<String, Any>(
+                        "kubernetes.config.file" to kubeConfig.toString(),
+                        "kubernetes.container.image" to "flink:1.14.3",
+                        "pipeline.jars" to "local:///opt/flink/usrlib/job.jar"
+                )
+            }
+        }
+    }
+
+    @Test
+    fun `jobs reach DEPLOYING`() {
+        val threadBean = ManagementFactory.getThreadMXBean()
+        val memoryBean = ManagementFactory.getMemoryMXBean()
+
+        val factory = MeasuringFactory()
+        val handler = MeasuringHandler(FlinkJobHandler.create(k8sClient, factory))
+        val informer = HandlerUtils.getPopulatedInformer("load", NAMESPACE, 600L, FlinkJobCustomResource::class.java,
+                k8sClient, handler, factory.lister)
+
+        try {
+            System.gc()
+            val initialThreads = threadBean.threadCount
+            val initialHeap = memoryBean.heapMemoryUsage.used
+            val initialRequests = KUBERNETES_SERVER.requestCount
+            threadBean.resetPeakThreadCount()
+
+            val createdAtNanos = HashMap<String, Long>()
+            val startNanos = System.nanoTime()
+            val crOperation = k8sClient.resources(FlinkJobCustomResource::class.java).inNamespace(NAMESPACE)
+            for (i in 0 until JOBS) {
+                val flinkJob = createJob("load-$i")
+                createdAtNanos["$NAMESPACE/load-$i"] = System.nanoTime()
+                crOperation.create(flinkJob)
+            }
+
+            val deadline = startNanos + TimeUnit.SECONDS.toNanos(60L + JOBS / 10L)
+            while (handler.deployingAtNanos.size < JOBS && System.nanoTime() < deadline) {
+                Thread.sleep(100L)
+            }
+            val elapsedNanos = System.nanoTime() - startNanos
+
+            val peakThreads = threadBean.peakThreadCount
+            System.gc()
+            val finalHeap = memoryBean.heapMemoryUsage.used
+            val requests = KUBERNETES_SERVER.requestCount - initialRequests
+            val latenciesMillis = handler.deployingAtNanos.map { (key, nanos) ->
+                TimeUnit.NANOSECONDS.toMillis(nanos - createdAtNanos.getValue(key))
+            }.sorted()
+
+            LOG.info("{} of {} jobs reached DEPLOYING in {}ms.", latenciesMillis.size, JOBS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+            LOG.info("Events: {} received, {} processed by the work queue, {} per second.",
+                    handler.events.get(), CoroutineFlinkJobReconciler.getWorkQueueStats().processed,
+                    handler.events.get() * 1_000_000_000L / elapsedNanos)
+            LOG.info("Creation to DEPLOYING: p50={}ms, p99={}ms, max={}ms.",
+                    percentile(latenciesMillis, 0.5), percentile(latenciesMillis, 0.99), latenciesMillis.lastOrNull())
+            LOG.info("API requests: {} in total, {} per job.", requests, requests.toDouble() / JOBS)
+            LOG.info("Threads: {} initially, {} at peak. Live heap: {}MB initially, {}MB at the end.",
+                    initialThreads, peakThreads, initialHeap / 1_048_576L, finalHeap / 1_048_576L)
+
+            Assertions.assertEquals(JOBS, latenciesMillis.size)
+        } finally {
+            informer.stop()
+            FlinkJobReconcilerFactory.stopFactories()
+        }
+    }
+
+    private fun percentile(sorted: List<Long>, p: Double): Long? {
+        return sorted.getOrNull(((sorted.size - 1) * p).toInt())
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.leadership
+
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderCallbacks
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer
+import kotlinx.coroutines.*
+import org.junit.jupiter.api.*
+import java.util.concurrent.TimeUnit
+
+class ShardedLeadershipManagerTest {
+    companion object {
+        private val KUBERNETES_SERVER = KubernetesServer(true, true)
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.before()
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            KUBERNETES_SERVER.after()
+        }
+    }
+
+    @Test
+    fun `shards are stable and balanced`() {
+        val numShards = 8
+        val counts = IntArray(numShards)
+        for (i in 0 until 8_000) {
+            val key = "flork/job-$i"
+            val shard = ShardedLeadershipManager.getShard(key, numShards)
+            Assertions.assertEquals(shard, ShardedLeadershipManager.getShard(key, numShards))
+            counts[shard]++
+        }
+        counts.forEach { Assertions.assertTrue(it in 800..1200, "Unbalanced shards: ${counts.contentToString()}") }
+
+        // only keys that move to the new shard should change
+        for (i in 0 until 1_000) {
+            val key = "flork/job-$i"
+            val newShard = ShardedLeadershipManager.getShard(key, numShards + 1)
+            if (newShard != numShards) {
+                Assertions.assertEquals(ShardedLeadershipManager.getShard(key, numShards), newShard)
+            }
+        }
+    }
+
+    @Test
+    @Timeout(value = 10L, unit = TimeUnit.SECONDS)
+    fun `resources follow their shard's leadership`() = runBlocking<Unit> {
+        KUBERNETES_SERVER.client.use { k8sClient ->
+            val manager = ShardedLeadershipManager(k8sClient, 2, 1, 2L)
+            val keys = (0 until 10).map { "flork/job-$it" }
+            Assertions.assertEquals(setOf(0, 1), keys.map { ShardedLeadershipManager.getShard(it, 2) }.toSet())
+
+            val leading = keys.associateWith { CompletableDeferred<Unit>() }
+            val stopped = keys.associateWith { CompletableDeferred<Unit>() }
+
+            try {
+                val participants = keys.map { key ->
+                    launch(Dispatchers.IO) {
+                        manager.participate(key, LeaderCallbacks(
+                                { leading.getValue(key).complete(Unit) },
+                                { stopped.getValue(key).complete(Unit) },
+                                {}
+                        ))
+                    }
+                }
+
+                leading.values.awaitAll()
+                Assertions.assertTrue(stopped.values.none { it.isCompleted })
+
+                participants.forEach { it.cancelAndJoin() }
+                stopped.values.awaitAll()
+            } finally {
+                manager.stop()
+            }
+        }
+    }
+
+    @Test
+    @Timeout(value = 60L, unit = TimeUnit.SECONDS)
+    fun `shards are rebalanced when a replica joins late`() = runBlocking<Unit> {
+        KUBERNETES_SERVER.client.use { k8sClient ->
+            val numShards = 4
+            val keys = (0 until 40).map { "flork/rebalanced-job-$it" }
+            Assertions.assertEquals((0 until numShards).toSet(), keys.map { ShardedLeadershipManager.getShard(it, numShards) }.toSet())
+
+            val first = ShardedLeadershipManager(k8sClient, numShards, 2, 2L, "replica-1")
+            val second = ShardedLeadershipManager(k8sClient, numShards, 2, 2L, "replica-2")
+            val callbacks = LeaderCallbacks({}, {}, {})
+            try {
+                keys.forEach { key -> launch(Dispatchers.IO) { first.participate(key, callbacks) } }
+                // a single replica has to take all shards
+                while (first.getOwnedShards() < numShards) {
+                    delay(100L)
+                }
+
+                keys.forEach { key -> launch(Dispatchers.IO) { second.participate(key, callbacks) } }
+                while (first.getOwnedShards() != 2 || second.getOwnedShards() != 2) {
+                    delay(100L)
+                }
+            } finally {
+                first.stop()
+                second.stop()
+                coroutineContext.cancelChildren()
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers
+
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.leadership.LeadershipManager
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.leadership.PerResourceLeadershipManager
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.leadership.ShardedLeadershipManager
+import io.fabric8.kubernetes.client.KubernetesClient
+import io.fabric8.kubernetes.client.informers.cache.Cache
+import io.fabric8.kubernetes.client.informers.cache.Lister
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer
+import kotlinx.coroutines.*
+import org.junit.jupiter.api.*
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.lang.management.ManagementFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+class ConcurrentPhasersTest {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(ConcurrentPhasersTest::class.java)
+
+        private val KUBERNETES_SERVER = KubernetesServer(true, true)
+        private val LISTER: AtomicReference<Lister<FlinkJobCustomResource>?> = AtomicReference(Lister(Cache()))
+
+        private const val PHASERS = 2_000
+        private const val MAX_ADDITIONAL_THREADS = 64
+
+        // the IO dispatcher's 64 threads doing blocking lease calls, plus the mock server's thread per connection
+        private const val MAX_ADDITIONAL_THREADS_PER_RESOURCE = 2 * 64 + 32
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.before()
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            KUBERNETES_SERVER.after()
+        }
+    }
+
+    private class PhaserWithoutDeploymentMonitor(
+            coroutineScope: CoroutineScope,
+            k8sClient: KubernetesClient,
+            jobKey: String,
+            override val leadershipManager: LeadershipManager
+    ) : CoroutineFlinkJobReconcilerPhaser(coroutineScope, k8sClient, LISTER, jobKey, 2L) {
+        override suspend fun setUpDeploymentMonitor(namespace: String, name: String) {
+            // not relevant for leadership
+        }
+    }
+
+    @Test
+    @Timeout(value = 60L, unit = TimeUnit.SECONDS)
+    fun `many phasers wait for sharded leadership without blocking threads`() = runBlocking {
+        KUBERNETES_SERVER.client.use { k8sClient ->
+            val leadershipManager = ShardedLeadershipManager(k8sClient, 4, 1, 2L)
+            try {
+                assertBoundedThreads(k8sClient, leadershipManager, MAX_ADDITIONAL_THREADS)
+            } finally {
+                leadershipManager.stop()
+            }
+        }
+    }
+
+    @Test
+    @Tag("load")
+    @Timeout(value = 180L, unit = TimeUnit.SECONDS)
+    fun `many phasers wait for per-resource leadership without blocking threads`() = runBlocking {
+        KUBERNETES_SERVER.client.use { k8sClient ->
+            // the default, 1 lease and 1 elector per resource; a longer lease so renewals don't swamp the mock server
+            assertBoundedThreads(k8sClient, PerResourceLeadershipManager(k8sClient, 15L), MAX_ADDITIONAL_THREADS_PER_RESOURCE)
+        }
+    }
+
+    private suspend fun assertBoundedThreads(k8sClient: KubernetesClient, leadershipManager: LeadershipManager, maxAdditionalThreads: Int) {
+        val threadBean = ManagementFactory.getThreadMXBean()
+        val initialThreadCount = threadBean.threadCount
+        threadBean.resetPeakThreadCount()
+
+        val phaserScope = CoroutineScope(SupervisorJob())
+        try {
+            val phasers = (0 until PHASERS).map { i ->
+                val key = "flork/job-$i"
+                PhaserWithoutDeploymentMonitor(phaserScope, k8sClient, key, leadershipManager).also {
+                    Assertions.assertTrue(it.start(phaserScope, key))
+                }
+            }
+
+            phasers.forEach { it.callbacks.initialReadiness.await() }
+            Assertions.assertTrue(phasers.all { it.isActive() })
+
+            val additionalThreads = threadBean.peakThreadCount - initialThreadCount
+            LOG.info("{} phasers became ready with {} additional thread(s) at peak.", PHASERS, additionalThreads)
+            Assertions.assertTrue(additionalThreads < maxAdditionalThreads,
+                    "$PHASERS phasers needed $additionalThreads additional threads.")
+        } finally {
+            phaserScope.cancel()
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers
 
 import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkDeploymentInformers
 import io.fabric8.kubernetes.api.model.coordination.v1.Lease
 import io.fabric8.kubernetes.client.KubernetesClient
 import io.fabric8.kubernetes.client.informers.cache.Cache
@@ -44,6 +45,7 @@ class CoroutineFlinkJobReconcilerPhaserTest {
         @JvmStatic
         @AfterAll
         fun tearDown() {
+            FlinkDeploymentInformers.reset()
             KUBERNETES_SERVER.after()
         }
     }
@@ -69,9 +71,19 @@ class CoroutineFlinkJobReconcilerPhaserTest {
             Assertions.assertTrue(phaser.start(phaserScope, KEY))
 
             try {
-                runInterruptible { phaser.callbacks.initialReadinessLatch.await() }
+                phaser.callbacks.initialReadiness.await()
                 Assertions.assertTrue(phaser.isActive())
 
+                val snapshot = phaser.getSnapshot()
+                Assertions.assertEquals(KEY, snapshot.key)
+                Assertions.assertTrue(snapshot.active)
+                Assertions.assertTrue(snapshot.leading)
+                Assertions.assertTrue(phaser.isLeading())
+                Assertions.assertEquals(0L, snapshot.observedGeneration)
+                Assertions.assertEquals(0, snapshot.channelBacklog)
+                Assertions.assertEquals(false, snapshot.setAsDeployedActive)
+                Assertions.assertNull(snapshot.lastError)
+
                 var lease = getLease(k8sClient, KEY)
                 Assertions.assertNotNull(lease)
 
@@ -83,6 +95,7 @@ class CoroutineFlinkJobReconcilerPhaserTest {
 
                 lease = getLease(k8sClient, KEY)
                 Assertions.assertNull(lease)
+                Assertions.assertFalse(phaser.isLeading())
 
             } finally {
                 phaser.cancel()
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.phases
+
+import com.microfocus.flork.kubernetes.api.utils.FlinkConfRenderCache
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobSpec
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobStatus
+import com.microfocus.flork.kubernetes.api.v1.model.FlorkPhase
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FakeFlinkRestServer
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FakeFlinkRestServer.Endpoint
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FakeFlinkRestServer.JobStep
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkJobManagerReadiness
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkResourceDeploymentMonitor
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkResourceOperations
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkRestClients
+import io.fabric8.kubernetes.api.model.EndpointsBuilder
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder
+import io.fabric8.kubernetes.api.model.PodBuilder
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer
+import io.fabric8.kubernetes.client.utils.Serialization
+import io.micrometer.core.instrument.Metrics
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.runBlocking
+import org.apache.flink.api.common.JobStatus
+import org.junit.jupiter.api.*
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+class FlinkJobPhasesTest {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(FlinkJobPhasesTest::class.java)
+
+        private val KUBERNETES_SERVER = KubernetesServer(true, true)
+        private val METER_REGISTRY = SimpleMeterRegistry()
+
+        private const val NAMESPACE = "flork"
+        private const val NAME = "foo"
+        private const val KEY = "$NAMESPACE/$NAME"
+
+        private val LABELS = mapOf("type" to "flink-native-kubernetes", "app" to NAME)
+
+        private lateinit var kubeConfig: Path
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.before()
+            Metrics.addRegistry(METER_REGISTRY)
+            kubeConfig = Files.createTempFile("flork-phases-test", ".kubeconfig")
+            Files.writeString(kubeConfig, """
+                apiVersion: v1
+                kind: Config
+                clusters:
+                - name: mock
+                  cluster:
+                    server: ${KUBERNETES_SERVER.client.masterUrl}
+                    insecure-skip-tls-verify: true
+                contexts:
+                - name: mock
+                  context:
+                    cluster: mock
+                    namespace: $NAMESPACE
+                    user: mock
+                current-context: mock
+                users:
+                - name: mock
+                  user:
+                    token: mock
+            """.trimIndent())
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            FlinkJobManagerReadiness.reset()
+            Metrics.removeRegistry(METER_REGISTRY)
+            runBlocking { FlinkConfRenderCache.reset() }
+            KUBERNETES_SERVER.after()
+            Files.deleteIfExists(kubeConfig)
+        }
+    }
+
+    private class InMemoryOperations(initial: FlinkJobCustomResource) : FlinkResourceOperations<FlinkJobSpec, FlinkJobStatus, FlinkJobCustomResource> {
+        @Volatile
+        var current: FlinkJobCustomResource = copy(initial)
+
+        val phases: MutableList<Pair<FlorkPhase?, Long>> = CopyOnWriteArrayList()
+
+        override suspend fun reloadResource(flinkResource: FlinkJobCustomResource): FlinkJobCustomResource {
+            return copy(current)
+        }
+
+        override suspend fun patchStatus(flinkResource: FlinkJobCustomResource): FlinkJobCustomResource {
+            current = copy(flinkResource)
+            phases.add(flinkResource.status.florkPhase to System.nanoTime())
+            return copy(current)
+        }
+
+        override suspend fun delete(flinkResource: FlinkJobCustomResource): Boolean {
+            return true
+        }
+
+        private fun copy(flinkJob: FlinkJobCustomResource): FlinkJobCustomResource {
+            return Serialization.unmarshal(Serialization.asJson(flinkJob), FlinkJobCustomResource::class.java)
+        }
+    }
+
+    private lateinit var flinkServer: FakeFlinkRestServer
+
+    @BeforeEach
+    fun startFlinkServer() {
+        flinkServer = FakeFlinkRestServer()
+    }
+
+    @AfterEach
+    fun stopFlinkServer() {
+        flinkServer.close()
+        FlinkRestClients.reset()
+        KUBERNETES_SERVER.client.apps().deployments().inNamespace(NAMESPACE).withName(NAME).delete()
+    }
+
+    private fun createJob(phase: FlorkPhase): FlinkJobCustomResource {
+        return FlinkJobCustomResource().apply {
+            metadata = ObjectMetaBuilder()
+                    .withNamespace(NAMESPACE)
+                    .withName(NAME)
+                    .withGeneration(1L)
+                    .build()
+            spec = FlinkJobSpec().apply {
+                jobClassName = "com.example.StreamingJob"
+                flinkConf = mutableMapOf<String, Any>(
+                        "kubernetes.config.file" to kubeConfig.toString(),
+                        "kubernetes.container.image" to "flink:1.14.3",
+                        "pipeline.jars" to "local:///opt/flink/usrlib/job.jar",
+                        "state.savepoints.dir" to flinkServer.savepointDirectory,
+                        "rest.retry.max-attempts" to "3",
+                        "rest.retry.delay" to "10"
+                )
+            }
+            status.florkPhase = phase
+        }
+    }
+
+    private fun createDeployment() {
+        KUBERNETES_SERVER.client.apps().deployments().inNamespace(NAMESPACE).createOrReplace(DeploymentBuilder()
+                .withNewMetadata()
+                .withName(NAME)
+                .withNamespace(NAMESPACE)
+                .withLabels<String, String>(LABELS)
+                .endMetadata()
+                .build())
+    }
+
+    private fun markJobManagerReady() {
+        val k8sClient = KUBERNETES_SERVER.client
+        k8sClient.pods().inNamespace(NAMESPACE).createOrReplace(PodBuilder()
+                .withNewMetadata()
+                .withName("$NAME-jm")
+                .withNamespace(NAMESPACE)
+                .withLabels<String, String>(LABELS + ("component" to "jobmanager"))
+                .endMetadata()
+                .withNewStatus()
+                .addNewCondition()
+                .withType("Ready")
+                .withStatus("True")
+                .endCondition()
+                .endStatus()
+                .build())
+        k8sClient.endpoints().inNamespace(NAMESPACE).createOrReplace(EndpointsBuilder()
+                .withNewMetadata()
+                .withName("$NAME-rest")
+                .withNamespace(NAMESPACE)
+                .withLabels<String, String>(LABELS)
+                .endMetadata()
+                .addNewSubset()
+                .addNewAddress()
+                .withIp("10.0.0.1")
+                .endAddress()
+                .endSubset()
+                .build())
+    }
+
+    private fun deploymentExists(): Boolean {
+        return KUBERNETES_SERVER.client.apps().deployments().inNamespace(NAMESPACE).withName(NAME).get() != null
+    }
+
+    @Test
+    @Timeout(value = 30L, unit = TimeUnit.SECONDS)
+    fun `shutdown stops job with savepoint`() = runBlocking<Unit> {
+        createDeployment()
+        flinkServer.submitJob(JobStep(JobStatus.RUNNING))
+        flinkServer.savepointDurationMillis = 500L
+        flinkServer.failNext(Endpoint.JOBS_OVERVIEW)
+
+        val clientCache = flinkServer.createClientCache(KEY)
+        val savepointPath = FlinkJobShutdownPhase(KUBERNETES_SERVER.client, KEY, clientCache, createJob(FlorkPhase.DEPLOYED))
+                .shutDownCleanly()
+
+        Assertions.assertNotNull(savepointPath)
+        Assertions.assertTrue(savepointPath!!.startsWith(flinkServer.savepointDirectory))
+        Assertions.assertEquals(JobStatus.FINISHED, flinkServer.getJobState())
+        // the failed overview request was retried
+        Assertions.assertEquals(2, flinkServer.getRequestCount(Endpoint.JOBS_OVERVIEW))
+        Assertions.assertTrue(flinkServer.getRequestCount(Endpoint.SAVEPOINT_STATUS) > 1)
+        Assertions.assertFalse(deploymentExists())
+    }
+
+    @Test
+    @Timeout(value = 30L, unit = TimeUnit.SECONDS)
+    fun `shutdown proceeds without savepoint if it fails`() = runBlocking<Unit> {
+        createDeployment()
+        flinkServer.submitJob(JobStep(JobStatus.RUNNING))
+        flinkServer.savepointFailure = "Scripted savepoint failure."
+
+        val clientCache = flinkServer.createClientCache(KEY)
+        val savepointPath = FlinkJobShutdownPhase(KUBERNETES_SERVER.client, KEY, clientCache, createJob(FlorkPhase.DEPLOYED))
+                .shutDownCleanly()
+
+        Assertions.assertNull(savepointPath)
+        Assertions.assertEquals(1, flinkServer.getRequestCount(Endpoint.STOP_WITH_SAVEPOINT))
+        Assertions.assertFalse(deploymentExists())
+    }
+
+    @Test
+    @Timeout(value = 60L, unit = TimeUnit.SECONDS)
+    fun `redeployment from savepoint reaches DEPLOYED`() = runBlocking<Unit> {
+        createDeployment()
+        markJobManagerReady()
+        flinkServer.submitJob(JobStep(JobStatus.RUNNING))
+        flinkServer.savepointDurationMillis = 500L
+        flinkServer.latencyMillis = 20L
+
+        val clientCache = flinkServer.createClientCache(KEY)
+        val flinkJob = createJob(FlorkPhase.DEPLOYED)
+        val startNanos = System.nanoTime()
+
+        val savepointPath = FlinkJobShutdownPhase(KUBERNETES_SERVER.client, KEY, clientCache, flinkJob).shutDownCleanly()
+        Assertions.assertNotNull(savepointPath)
+        val shutdownNanos = System.nanoTime()
+
+        // the new cluster's job restores from the savepoint for a while
+        flinkServer.submitJob(JobStep(JobStatus.INITIALIZING, 1_000L), JobStep(JobStatus.RUNNING))
+        val redeployedJob = createJob(FlorkPhase.COMPLETED).apply {
+            status.knownSavepointPath = savepointPath
+        }
+        val crOperations = InMemoryOperations(redeployedJob)
+        val setAsDeployedCoroutine = AtomicReference<Job?>()
+        FlinkJobCreatePhase(KUBERNETES_SERVER.client, KEY, FlinkResourceDeploymentMonitor(NAMESPACE, NAME), clientCache,
+                redeployedJob, crOperations, setAsDeployedCoroutine)
+                .performInitialDeployment(this)
+        Assertions.assertTrue(deploymentExists())
+
+        setAsDeployedCoroutine.get()!!.join()
+        val deployedNanos = crOperations.phases.last().second
+
+        Assertions.assertEquals(listOf(FlorkPhase.DEPLOYING, FlorkPhase.DEPLOYED), crOperations.phases.map { it.first })
+        Assertions.assertNull(crOperations.current.status.knownSavepointPath)
+        Assertions.assertEquals(listOf(savepointPath), flinkServer.disposedSavepoints)
+
+        val transitions = crOperations.current.status.transitions
+        Assertions.assertEquals(listOf(FlorkPhase.COMPLETED to FlorkPhase.DEPLOYING, FlorkPhase.DEPLOYING to FlorkPhase.DEPLOYED),
+                transitions.map { it.from to it.to })
+        transitions.forEach {
+            Assertions.assertEquals(1L, it.generation)
+            Assertions.assertNotNull(it.durationMillis)
+        }
+
+        Assertions.assertNotNull(METER_REGISTRY.find(FlorkMetrics.SAVEPOINT_DURATION).tag("outcome", FlorkMetrics.OUTCOME_SUCCESS).timer())
+        Assertions.assertNotNull(METER_REGISTRY.find(FlorkMetrics.TRANSITION_DURATION).tags("from", "COMPLETED", "to", "DEPLOYING").timer())
+        Assertions.assertEquals(1L, METER_REGISTRY.find(FlorkMetrics.TRANSITION_DURATION).tags("from", "DEPLOYING", "to", "DEPLOYED").timer()?.count())
+
+        LOG.info("Redeployment took {}ms: {}ms for savepoint and teardown, {}ms until the job was running.",
+                TimeUnit.NANOSECONDS.toMillis(deployedNanos - startNanos),
+                TimeUnit.NANOSECONDS.toMillis(shutdownNanos - startNanos),
+                TimeUnit.NANOSECONDS.toMillis(deployedNanos - shutdownNanos))
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.apache.flink.api.common.JobID
+import org.apache.flink.api.common.JobStatus
+import org.apache.flink.runtime.execution.ExecutionState
+import org.apache.flink.runtime.messages.webmonitor.JobDetails
+import org.apache.flink.runtime.messages.webmonitor.MultipleJobsDetails
+import org.apache.flink.runtime.rest.handler.async.AsynchronousOperationInfo
+import org.apache.flink.runtime.rest.handler.async.AsynchronousOperationResult
+import org.apache.flink.runtime.rest.handler.async.TriggerResponse
+import org.apache.flink.runtime.rest.messages.EmptyResponseBody
+import org.apache.flink.runtime.rest.messages.ErrorResponseBody
+import org.apache.flink.runtime.rest.messages.TriggerId
+import org.apache.flink.runtime.rest.messages.job.savepoints.SavepointDisposalRequest
+import org.apache.flink.runtime.rest.messages.job.savepoints.SavepointInfo
+import org.apache.flink.runtime.rest.util.RestMapperUtils
+import org.apache.flink.util.FlinkException
+import org.apache.flink.util.SerializedThrowable
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.net.InetSocketAddress
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * In-process stand-in for the REST endpoint of a Flink job manager, covering the requests [FlinkJobRestClient] sends.
+ * A job's state transitions, response latency, savepoint duration and failures can be scripted,
+ * so that the create and shutdown phases can be exercised without a Flink cluster
+ * (readiness of the job manager and the deployment itself still go through the Kubernetes API).
+ *
+ * Responses are serialized from Flink's own message classes, so they match what [org.apache.flink.runtime.rest.RestClient] expects.
+ */
+class FakeFlinkRestServer : AutoCloseable {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(FakeFlinkRestServer::class.java)
+
+        private val MAPPER = RestMapperUtils.getStrictObjectMapper()
+
+        private val JOB_PATH = Regex("/jobs/([0-9a-f]{32})")
+        private val STOP_PATH = Regex("/jobs/([0-9a-f]{32})/stop")
+        private val SAVEPOINT_STATUS_PATH = Regex("/jobs/([0-9a-f]{32})/savepoints/([0-9a-f]{32})")
+        private val DISPOSAL_STATUS_PATH = Regex("/savepoint-disposal/([0-9a-f]{32})")
+    }
+
+    enum class Endpoint {
+        JOBS_OVERVIEW,
+        CANCEL,
+        STOP_WITH_SAVEPOINT,
+        SAVEPOINT_STATUS,
+        SAVEPOINT_DISPOSAL,
+        SAVEPOINT_DISPOSAL_STATUS
+    }
+
+    /**
+     * The job stays in [state] for [durationMillis], the last step of a script lasts indefinitely.
+     */
+    class JobStep(val state: JobStatus, val durationMillis: Long = 0L)
+
+    private class Job(val id: JobID, val steps: List<JobStep>, val submittedAtNanos: Long) {
+        @Volatile
+        var terminalState: JobStatus? = null
+        @Volatile
+        var terminalAtNanos = Long.MAX_VALUE
+
+        fun stateAt(nanos: Long): JobStatus {
+            if (nanos >= terminalAtNanos) {
+                return terminalState!!
+            }
+            var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(nanos - submittedAtNanos)
+            for (step in steps.dropLast(1)) {
+                if (elapsedMillis < step.durationMillis) {
+                    return step.state
+                }
+                elapsedMillis -= step.durationMillis
+            }
+            return steps.last().state
+        }
+    }
+
+    private class Operation(val completedAtNanos: Long, val location: String?, val failure: String?)
+
+    private class Failure(val remaining: AtomicInteger, val statusCode: Int)
+
+    private val executor: ExecutorService = Executors.newCachedThreadPool()
+    private val server: HttpServer = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+
+    @Volatile
+    private var job: Job? = null
+
+    private val savepoints = ConcurrentHashMap<TriggerId, Operation>()
+    private val disposals = ConcurrentHashMap<TriggerId, Operation>()
+    private val failures = ConcurrentHashMap<Endpoint, Failure>()
+    private val requests = ConcurrentHashMap<Endpoint, AtomicInteger>()
+    private val savepointCounter = AtomicInteger(0)
+
+    /**
+     * Delay before every response is sent.
+     */
+    @Volatile
+    var latencyMillis = 0L
+
+    /**
+     * How long a stop-with-savepoint operation stays in progress, the job finishes when it completes.
+     */
+    @Volatile
+    var savepointDurationMillis = 0L
+
+    @Volatile
+    var savepointDirectory = "file:///tmp/flork-savepoints"
+
+    /**
+     * If set, savepoint operations complete with this failure and the job keeps running.
+     */
+    @Volatile
+    var savepointFailure: String? = null
+
+    /**
+     * Paths of all savepoints that were disposed.
+     */
+    val disposedSavepoints: MutableList<String> = CopyOnWriteArrayList()
+
+    val port: Int
+        get() = server.address.port
+
+    init {
+        server.executor = executor
+        server.createContext("/") { exchange ->
+            exchange.use { handle(it) }
+        }
+        server.start()
+    }
+
+    /**
+     * Replaces the current job with a new one that goes through the given states, starting now.
+     */
+    fun submitJob(vararg steps: JobStep): JobID {
+        require(steps.isNotEmpty()) { "A job needs at least one state." }
+        return JobID().also { id ->
+            job = Job(id, steps.toList(), System.nanoTime())
+        }
+    }
+
+    fun removeJob() {
+        job = null
+    }
+
+    fun getJobState(): JobStatus? {
+        return job?.stateAt(System.nanoTime())
+    }
+
+    /**
+     * Makes the next [times] requests to the given endpoint fail with [statusCode].
+     */
+    fun failNext(endpoint: Endpoint, times: Int = 1, statusCode: Int = 500) {
+        failures[endpoint] = Failure(AtomicInteger(times), statusCode)
+    }
+
+    fun getRequestCount(endpoint: Endpoint): Int {
+        return requests[endpoint]?.get() ?: 0
+    }
+
+    /**
+     * A client cache for the given job that always connects to this server.
+     */
+    fun createClientCache(jobKey: String): FlinkClusterClientCache {
+        return FlinkClusterClientCache(jobKey) { key, config, _ ->
+            FlinkJobRestClient(key, FlinkRestClients.getRestClient(config), "localhost", port, config)
+        }
+    }
+
+    override fun close() {
+        server.stop(0)
+        executor.shutdownNow()
+    }
+
+    private fun handle(exchange: HttpExchange) {
+        // the client prefixes URLs with the REST API version
+        val path = exchange.requestURI.path.removePrefix("/v1")
+        val method = exchange.requestMethod
+
+        val endpoint = when {
+            method == "GET" && path == "/jobs/overview" -> Endpoint.JOBS_OVERVIEW
+            method == "PATCH" && JOB_PATH.matches(path) -> Endpoint.CANCEL
+            method == "POST" && STOP_PATH.matches(path) -> Endpoint.STOP_WITH_SAVEPOINT
+            method == "GET" && SAVEPOINT_STATUS_PATH.matches(path) -> Endpoint.SAVEPOINT_STATUS
+            method == "POST" && path == "/savepoint-disposal" -> Endpoint.SAVEPOINT_DISPOSAL
+            method == "GET" && DISPOSAL_STATUS_PATH.matches(path) -> Endpoint.SAVEPOINT_DISPOSAL_STATUS
+            else -> null
+        }
+
+        if (latencyMillis > 0L) {
+            Thread.sleep(latencyMillis)
+        }
+
+        if (endpoint == null) {
+            LOG.warn("Unexpected request {} {}.", method, path)
+            respond(exchange, 404, ErrorResponseBody("Not found: $path"))
+            return
+        }
+        requests.computeIfAbsent(endpoint) { AtomicInteger(0) }.incrementAndGet()
+
+        val failure = failures[endpoint]
+        if (failure != null && failure.remaining.getAndDecrement() > 0) {
+            respond(exchange, failure.statusCode, ErrorResponseBody("Scripted failure of $endpoint."))
+            return
+        }
+
+        val now = System.nanoTime()
+        when (endpoint) {
+            Endpoint.JOBS_OVERVIEW -> respond(exchange, 200, getOverview(now))
+            Endpoint.CANCEL -> withJob(exchange, JOB_PATH.matchEntire(path)!!.groupValues[1]) { job ->
+                job.terminalState = JobStatus.CANCELED
+                job.terminalAtNanos = now
+                respond(exchange, 202, EmptyResponseBody.getInstance())
+            }
+            Endpoint.STOP_WITH_SAVEPOINT -> withJob(exchange, STOP_PATH.matchEntire(path)!!.groupValues[1]) { job ->
+                val completedAtNanos = now + TimeUnit.MILLISECONDS.toNanos(savepointDurationMillis)
+                val failureCause = savepointFailure
+                val location = "$savepointDirectory/savepoint-${job.id.toHexString().take(6)}-${savepointCounter.incrementAndGet()}"
+                if (failureCause == null) {
+                    job.terminalState = JobStatus.FINISHED
+                    job.terminalAtNanos = completedAtNanos
+                }
+                val triggerId = TriggerId()
+                savepoints[triggerId] = Operation(completedAtNanos, location, failureCause)
+                respond(exchange, 202, TriggerResponse(triggerId))
+            }
+            Endpoint.SAVEPOINT_STATUS -> {
+                val triggerId = TriggerId.fromHexString(SAVEPOINT_STATUS_PATH.matchEntire(path)!!.groupValues[2])
+                val operation = savepoints[triggerId]
+                when {
+                    operation == null -> respond(exchange, 404, ErrorResponseBody("Unknown trigger $triggerId."))
+                    now < operation.completedAtNanos -> respond(exchange, 200, AsynchronousOperationResult.inProgress<SavepointInfo>())
+                    operation.failure != null -> respond(exchange, 200, AsynchronousOperationResult.completed(
+                            SavepointInfo(null, SerializedThrowable(FlinkException(operation.failure)))))
+                    else -> respond(exchange, 200, AsynchronousOperationResult.completed(SavepointInfo(operation.location, null)))
+                }
+            }
+            Endpoint.SAVEPOINT_DISPOSAL -> {
+                val request = exchange.requestBody.use { MAPPER.readValue(it, SavepointDisposalRequest::class.java) }
+                val triggerId = TriggerId()
+                disposals[triggerId] = Operation(now, request.savepointPath, null)
+                disposedSavepoints.add(request.savepointPath)
+                respond(exchange, 202, TriggerResponse(triggerId))
+            }
+            Endpoint.SAVEPOINT_DISPOSAL_STATUS -> {
+                val triggerId = TriggerId.fromHexString(DISPOSAL_STATUS_PATH.matchEntire(path)!!.groupValues[1])
+                if (disposals.containsKey(triggerId)) {
+                    respond(exchange, 200, AsynchronousOperationResult.completed(AsynchronousOperationInfo.complete()))
+                } else {
+                    respond(exchange, 404, ErrorResponseBody("Unknown trigger $triggerId."))
+                }
+            }
+        }
+    }
+
+    private fun getOverview(nanos: Long): MultipleJobsDetails {
+        val current = job ?: return MultipleJobsDetails(emptyList())
+        val state = current.stateAt(nanos)
+        val tasksPerState = IntArray(ExecutionState.values().size)
+        tasksPerState[if (state == JobStatus.RUNNING) ExecutionState.RUNNING.ordinal else ExecutionState.CREATED.ordinal] = 1
+        val startMillis = TimeUnit.NANOSECONDS.toMillis(current.submittedAtNanos)
+        val duration = TimeUnit.NANOSECONDS.toMillis(nanos - current.submittedAtNanos)
+        val details = JobDetails(current.id, "job", startMillis, -1L, duration, state, startMillis + duration, tasksPerState, 1)
+        return MultipleJobsDetails(listOf(details))
+    }
+
+    private fun withJob(exchange: HttpExchange, jobId: String, action: (Job) -> Unit) {
+        val current = job
+        if (current == null || current.id.toHexString() != jobId) {
+            respond(exchange, 404, ErrorResponseBody("Job $jobId not found."))
+        } else {
+            action(current)
+        }
+    }
+
+    private fun respond(exchange: HttpExchange, statusCode: Int, body: Any) {
+        val bytes = MAPPER.writeValueAsBytes(body)
+        exchange.responseHeaders.add("Content-Type", "application/json")
+        exchange.sendResponseHeaders(statusCode, bytes.size.toLong())
+        exchange.responseBody.write(bytes)
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import kotlinx.coroutines.runBlocking
+import org.apache.flink.configuration.Configuration
+import org.apache.flink.configuration.RestOptions
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.util.concurrent.atomic.AtomicInteger
+
+class FlinkClusterClientCacheTest {
+    @AfterEach
+    fun tearDown() {
+        FlinkRestClients.reset()
+    }
+
+    @Test
+    fun `clients are reused until REST configuration changes`() = runBlocking<Unit> {
+        val created = AtomicInteger(0)
+        val cache = FlinkClusterClientCache("ns/job") { jobKey, config, _ ->
+            created.incrementAndGet()
+            FlinkJobRestClient(jobKey, FlinkRestClients.getRestClient(config), "localhost", config.get(RestOptions.PORT), config)
+        }
+
+        val config = Configuration().apply { set(RestOptions.PORT, 8081) }
+        val first = cache.get(config, "job", true)
+        // unrelated options must not invalidate the client
+        config.setString("taskmanager.numberOfTaskSlots", "4")
+        Assertions.assertSame(first, cache.get(config, "job", true))
+        Assertions.assertEquals(1, created.get())
+
+        config.set(RestOptions.PORT, 8082)
+        val second = cache.get(config, "job", true)
+        Assertions.assertNotSame(first, second)
+        Assertions.assertEquals(8082, second.port)
+        Assertions.assertEquals(2, created.get())
+
+        cache.invalidate()
+        cache.get(config, "job", true)
+        Assertions.assertEquals(3, created.get())
+
+        cache.close()
+        Assertions.assertThrows(IllegalStateException::class.java) {
+            runBlocking { cache.get(config, "job", true) }
+        }
+    }
+}
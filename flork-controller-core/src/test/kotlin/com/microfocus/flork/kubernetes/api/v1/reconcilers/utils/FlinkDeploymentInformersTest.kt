@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer
+import kotlinx.coroutines.*
+import org.junit.jupiter.api.*
+import java.util.concurrent.TimeUnit
+
+class FlinkDeploymentInformersTest {
+    companion object {
+        private val KUBERNETES_SERVER = KubernetesServer(true, true)
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.before()
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            FlinkDeploymentInformers.reset()
+            KUBERNETES_SERVER.after()
+        }
+    }
+
+    @Test
+    @Timeout(value = 10L, unit = TimeUnit.SECONDS)
+    fun `events are dispatched by key`() = runBlocking {
+        val k8sClient = KUBERNETES_SERVER.client
+        createDeployment("existing", true)
+
+        val existingMonitor = FlinkResourceDeploymentMonitor("flork", "existing")
+        val newMonitor = FlinkResourceDeploymentMonitor("flork", "new")
+        withContext(Dispatchers.IO) {
+            FlinkDeploymentInformers.register(k8sClient, "flork", "existing", existingMonitor)
+            FlinkDeploymentInformers.register(k8sClient, "flork", "new", newMonitor)
+        }
+        Assertions.assertTrue(existingMonitor.addedFlag.get())
+        Assertions.assertFalse(newMonitor.addedFlag.get())
+
+        createDeployment("unrelated", false)
+        createDeployment("new", true)
+        while (!newMonitor.addedFlag.get()) {
+            delay(50L)
+        }
+
+        k8sClient.apps().deployments().inNamespace("flork").withName("existing").delete()
+        existingMonitor.deletion.get().await()
+        Assertions.assertFalse(newMonitor.deletion.get().isCompleted)
+    }
+
+    private fun createDeployment(name: String, flinkNative: Boolean) {
+        KUBERNETES_SERVER.client.apps().deployments().inNamespace("flork").create(DeploymentBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .withNamespace("flork")
+                .addToLabels("type", if (flinkNative) "flink-native-kubernetes" else "other")
+                .endMetadata()
+                .build())
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobSpec
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder
+import io.fabric8.kubernetes.client.DefaultKubernetesClient
+import io.fabric8.kubernetes.client.okhttp.OkHttpClientFactory
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer
+import io.micrometer.core.instrument.Metrics
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.runBlocking
+import okhttp3.*
+import org.apache.flink.configuration.HighAvailabilityOptions
+import org.junit.jupiter.api.*
+import java.util.concurrent.TimeUnit
+
+class FlinkHighAvailabilityCleanupTest {
+    companion object {
+        private val KUBERNETES_SERVER = KubernetesServer(true, true)
+        private val METER_REGISTRY = SimpleMeterRegistry()
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.before()
+            Metrics.addRegistry(METER_REGISTRY)
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            Metrics.removeRegistry(METER_REGISTRY)
+            KUBERNETES_SERVER.after()
+        }
+    }
+
+    private fun createJob(name: String, withHighAvailability: Boolean) = FlinkJobCustomResource().apply {
+        metadata = ObjectMetaBuilder()
+                .withNamespace("flork")
+                .withName(name)
+                .build()
+        spec = FlinkJobSpec().apply {
+            flinkConf = if (withHighAvailability) mutableMapOf<String, Any>(HighAvailabilityOptions.HA_MODE.key() to "kubernetes") else mutableMapOf()
+        }
+    }
+
+    private fun createConfigMap(name: String, labels: Map<String, String>) {
+        KUBERNETES_SERVER.client.configMaps().inNamespace("flork").create(ConfigMapBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .withNamespace("flork")
+                .withLabels<String, String>(labels)
+                .endMetadata()
+                .build())
+    }
+
+    private fun getConfigMapNames(): Set<String> {
+        return KUBERNETES_SERVER.client.configMaps().inNamespace("flork").list().items.map { it.metadata.name }.toSet()
+    }
+
+    @Test
+    @Timeout(value = 10L, unit = TimeUnit.SECONDS)
+    fun `only HA config maps of the job are deleted`() = runBlocking<Unit> {
+        createConfigMap("foo-dispatcher-leader", FlinkHighAvailabilityCleanup.getLabels("foo"))
+        createConfigMap("foo-resourcemanager-leader", FlinkHighAvailabilityCleanup.getLabels("foo"))
+        createConfigMap("bar-dispatcher-leader", FlinkHighAvailabilityCleanup.getLabels("bar"))
+        createConfigMap("foo-config", mapOf("app" to "foo"))
+
+        FlinkHighAvailabilityCleanup.cleanIfEnabled(KUBERNETES_SERVER.client, createJob("bar", false), "flork/bar")
+        Assertions.assertTrue(getConfigMapNames().contains("bar-dispatcher-leader"))
+
+        FlinkHighAvailabilityCleanup.cleanIfEnabled(KUBERNETES_SERVER.client, createJob("foo", true), "flork/foo")
+        Assertions.assertEquals(setOf("bar-dispatcher-leader", "foo-config"), getConfigMapNames())
+        Assertions.assertEquals(1L, METER_REGISTRY.find(FlorkMetrics.HA_CLEANUP_DURATION).tag("outcome", FlorkMetrics.OUTCOME_SUCCESS).timer()?.count())
+
+        // nothing left to delete
+        FlinkHighAvailabilityCleanup.cleanIfEnabled(KUBERNETES_SERVER.client, createJob("foo", true), "flork/foo")
+        Assertions.assertEquals(2L, METER_REGISTRY.find(FlorkMetrics.HA_CLEANUP_DURATION).tag("outcome", FlorkMetrics.OUTCOME_SUCCESS).timer()?.count())
+    }
+
+    @Test
+    @Timeout(value = 10L, unit = TimeUnit.SECONDS)
+    fun `cleanup gives up if config maps are not deleted in time`() = runBlocking<Unit> {
+        createConfigMap("baz-dispatcher-leader", FlinkHighAvailabilityCleanup.getLabels("baz"))
+
+        // the API server accepts the deletion but never carries it out
+        val config = KUBERNETES_SERVER.client.configuration
+        val httpClient = object : OkHttpClientFactory() {
+            override fun additionalConfig(builder: OkHttpClient.Builder) {
+                builder.addInterceptor { chain ->
+                    if (chain.request().method() == "DELETE") {
+                        Response.Builder()
+                                .request(chain.request())
+                                .protocol(Protocol.HTTP_1_1)
+                                .code(200)
+                                .message("OK")
+                                .body(ResponseBody.create(MediaType.parse("application/json"), "{}"))
+                                .build()
+                    } else {
+                        chain.proceed(chain.request())
+                    }
+                }
+            }
+        }.createHttpClient(config)
+
+        try {
+            DefaultKubernetesClient(httpClient, config).use { k8sClient ->
+                FlinkHighAvailabilityCleanup.cleanIfEnabled(k8sClient, createJob("baz", true), "flork/baz", 500L)
+            }
+
+            Assertions.assertTrue(getConfigMapNames().contains("baz-dispatcher-leader"))
+            Assertions.assertEquals(1L, METER_REGISTRY.find(FlorkMetrics.HA_CLEANUP_DURATION).tag("outcome", FlorkMetrics.OUTCOME_TIMEOUT).timer()?.count())
+        } finally {
+            KUBERNETES_SERVER.client.configMaps().inNamespace("flork").withName("baz-dispatcher-leader").delete()
+        }
+    }
+}
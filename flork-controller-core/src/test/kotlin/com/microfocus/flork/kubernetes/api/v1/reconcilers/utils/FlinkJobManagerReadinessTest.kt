@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import io.fabric8.kubernetes.api.model.EndpointsBuilder
+import io.fabric8.kubernetes.api.model.PodBuilder
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer
+import kotlinx.coroutines.*
+import org.junit.jupiter.api.*
+import java.util.concurrent.TimeUnit
+
+class FlinkJobManagerReadinessTest {
+    companion object {
+        private val KUBERNETES_SERVER = KubernetesServer(true, true)
+
+        private val LABELS = mapOf("type" to "flink-native-kubernetes", "app" to "foo")
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.before()
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            FlinkJobManagerReadiness.reset()
+            KUBERNETES_SERVER.after()
+        }
+    }
+
+    @Test
+    @Timeout(value = 10L, unit = TimeUnit.SECONDS)
+    fun `ready once pod and endpoints are`() = runBlocking {
+        val k8sClient = KUBERNETES_SERVER.client
+        createOrReplacePod(false)
+
+        val ready = async(Dispatchers.IO) {
+            FlinkJobManagerReadiness.await(k8sClient, "flork", "foo")
+        }
+
+        createOrReplacePod(true)
+        delay(500L)
+        Assertions.assertFalse(ready.isCompleted)
+
+        k8sClient.endpoints().inNamespace("flork").create(EndpointsBuilder()
+                .withNewMetadata()
+                .withName("foo-rest")
+                .withNamespace("flork")
+                .withLabels<String, String>(LABELS)
+                .endMetadata()
+                .addNewSubset()
+                .addNewAddress()
+                .withIp("10.0.0.1")
+                .endAddress()
+                .endSubset()
+                .build())
+
+        ready.await()
+    }
+
+    private fun createOrReplacePod(ready: Boolean) {
+        KUBERNETES_SERVER.client.pods().inNamespace("flork").createOrReplace(PodBuilder()
+                .withNewMetadata()
+                .withName("foo-jm")
+                .withNamespace("flork")
+                .withLabels<String, String>(LABELS + ("component" to "jobmanager"))
+                .endMetadata()
+                .withNewStatus()
+                .addNewCondition()
+                .withType("Ready")
+                .withStatus(if (ready) "True" else "False")
+                .endCondition()
+                .endStatus()
+                .build())
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.sun.net.httpserver.HttpServer
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import org.apache.flink.api.common.JobID
+import org.apache.flink.api.common.JobStatus
+import org.apache.flink.configuration.Configuration
+import org.apache.flink.configuration.RestOptions
+import org.junit.jupiter.api.*
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.lang.management.ManagementFactory
+import java.net.InetSocketAddress
+import java.util.concurrent.TimeUnit
+
+class FlinkRestClientsTest {
+    companion object {
+        private val LOG: Logger = LoggerFactory.getLogger(FlinkRestClientsTest::class.java)
+
+        private const val JOBS = 100
+        private const val POLLS_PER_JOB = 5
+        private const val MAX_ADDITIONAL_THREADS = 8
+
+        private val JOB_ID = JobID()
+
+        private val OVERVIEW = """
+            {"jobs":[{"jid":"$JOB_ID","name":"job","state":"RUNNING","start-time":1,"end-time":-1,"duration":1,"last-modification":1,
+            "tasks":{"total":1,"created":0,"scheduled":0,"deploying":0,"running":1,"finished":0,"canceling":0,"canceled":0,"failed":0,"reconciling":0,"initializing":0}}]}
+        """.trimIndent().toByteArray()
+    }
+
+    private lateinit var server: HttpServer
+
+    @BeforeEach
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+        server.createContext("/") { exchange ->
+            exchange.use {
+                if (it.requestURI.path.endsWith("/jobs/overview")) {
+                    it.responseHeaders.add("Content-Type", "application/json")
+                    it.sendResponseHeaders(200, OVERVIEW.size.toLong())
+                    it.responseBody.write(OVERVIEW)
+                } else {
+                    it.sendResponseHeaders(404, -1L)
+                }
+            }
+        }
+        server.start()
+    }
+
+    @AfterEach
+    fun tearDown() {
+        server.stop(0)
+        FlinkRestClients.reset()
+    }
+
+    @Test
+    @Timeout(value = 60L, unit = TimeUnit.SECONDS)
+    fun `monitored jobs share REST client threads`() = runBlocking<Unit> {
+        val threadBean = ManagementFactory.getThreadMXBean()
+        val initialThreadCount = threadBean.threadCount
+        threadBean.resetPeakThreadCount()
+
+        val config = Configuration().apply { set(RestOptions.PORT, server.address.port) }
+        val clients = (0 until JOBS).map { i ->
+            FlinkJobRestClient("flork/job-$i", FlinkRestClients.getRestClient(config), "localhost", server.address.port, config)
+        }
+
+        // all requests are in flight concurrently while this coroutine's thread waits
+        val results = clients.map { client ->
+            async {
+                (0 until POLLS_PER_JOB).map { client.listJobs().single() }
+            }
+        }.awaitAll().flatten()
+
+        Assertions.assertEquals(JOBS * POLLS_PER_JOB, results.size)
+        Assertions.assertTrue(results.all { it.jobId == JOB_ID && it.jobState == JobStatus.RUNNING })
+
+        val additionalThreads = threadBean.peakThreadCount - initialThreadCount
+        LOG.info("{} additional thread(s) at peak per {} monitored jobs.", additionalThreads, JOBS)
+        Assertions.assertTrue(additionalThreads <= MAX_ADDITIONAL_THREADS,
+                "$JOBS monitored jobs needed $additionalThreads additional threads.")
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class ReconcileBackoffTest {
+    @Test
+    fun `backoff grows exponentially up to cap and resets`() {
+        val backoff = ReconcileBackoff(100L, 1_000L)
+        Assertions.assertEquals(0L, backoff.getBackoffMillis("a"))
+
+        val expected = listOf(100L, 200L, 400L, 800L, 1_000L, 1_000L)
+        for (millis in expected) {
+            val delay = backoff.next("a")
+            Assertions.assertEquals(millis, backoff.getBackoffMillis("a"))
+            Assertions.assertTrue(delay in (millis / 2L)..millis, "$delay not in jitter range of $millis")
+        }
+        Assertions.assertEquals(0L, backoff.getBackoffMillis("b"))
+
+        backoff.reset("a")
+        Assertions.assertEquals(0L, backoff.getBackoffMillis("a"))
+        backoff.next("a")
+        Assertions.assertEquals(100L, backoff.getBackoffMillis("a"))
+    }
+}
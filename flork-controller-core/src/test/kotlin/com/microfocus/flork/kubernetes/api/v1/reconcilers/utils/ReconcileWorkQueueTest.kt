@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.microfocus.flork.kubernetes.api.utils.FlorkMetrics
+import io.micrometer.core.instrument.Metrics
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.*
+import org.junit.jupiter.api.*
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class ReconcileWorkQueueTest {
+    companion object {
+        private val METER_REGISTRY = SimpleMeterRegistry()
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            Metrics.addRegistry(METER_REGISTRY)
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            Metrics.removeRegistry(METER_REGISTRY)
+            FlorkMetrics.reset()
+        }
+    }
+
+    @Test
+    @Timeout(value = 10L, unit = TimeUnit.SECONDS)
+    fun `items are coalesced and dirty keys are re-run`() = runBlocking {
+        val scope = CoroutineScope(SupervisorJob())
+        val gate = CompletableDeferred<Unit>()
+        val started = CompletableDeferred<Unit>()
+        val processed = ConcurrentLinkedQueue<Pair<String, Int>>()
+
+        try {
+            // a single worker, so nothing else is processed while "a" is blocked
+            val queue = ReconcileWorkQueue<Int>("coalescing", scope, 1) { key, item ->
+                if (key == "a" && item == 1) {
+                    started.complete(Unit)
+                    gate.await()
+                }
+                processed.add(key to item)
+            }
+
+            queue.add("a", 1)
+            started.await()
+            queue.add("a", 2)
+            queue.add("a", 3)
+            queue.add("b", 1)
+            queue.add("b", 2)
+
+            Assertions.assertEquals(2, queue.getStats().depth)
+            Assertions.assertEquals(1, queue.getStats().inFlight)
+            Assertions.assertEquals(2.0, METER_REGISTRY.find(FlorkMetrics.WORK_QUEUE_DEPTH).tag("queue", "coalescing").gauge()?.value())
+            Assertions.assertEquals(1.0, METER_REGISTRY.find(FlorkMetrics.WORK_QUEUE_IN_FLIGHT).tag("queue", "coalescing").gauge()?.value())
+
+            gate.complete(Unit)
+            while (queue.getStats().processed < 3L) {
+                delay(10L)
+            }
+
+            Assertions.assertEquals(listOf("a" to 1, "a" to 3), processed.filter { it.first == "a" })
+            Assertions.assertEquals(listOf("b" to 2), processed.filter { it.first == "b" })
+            Assertions.assertEquals(0, queue.getStats().depth)
+            Assertions.assertEquals(0.0, METER_REGISTRY.find(FlorkMetrics.WORK_QUEUE_DEPTH).tag("queue", "coalescing").gauge()?.value())
+            Assertions.assertEquals(3L, METER_REGISTRY.find(FlorkMetrics.WORK_QUEUE_WAIT).tag("queue", "coalescing").timer()?.count())
+        } finally {
+            scope.cancel()
+        }
+    }
+
+    @Test
+    @Timeout(value = 10L, unit = TimeUnit.SECONDS)
+    fun `pending items can be merged instead of replaced`() = runBlocking {
+        val scope = CoroutineScope(SupervisorJob())
+        val gate = CompletableDeferred<Unit>()
+        val started = CompletableDeferred<Unit>()
+        val processed = ConcurrentLinkedQueue<List<Int>>()
+
+        try {
+            val queue = ReconcileWorkQueue<List<Int>>("test", scope, 1, { pending, added -> pending + added }) { _, item ->
+                if (item == listOf(0)) {
+                    started.complete(Unit)
+                    gate.await()
+                }
+                processed.add(item)
+            }
+
+            queue.add("a", listOf(0))
+            started.await()
+            queue.add("a", listOf(1))
+            queue.add("a", listOf(2))
+
+            gate.complete(Unit)
+            while (queue.getStats().processed < 2L) {
+                delay(10L)
+            }
+
+            Assertions.assertEquals(listOf(listOf(0), listOf(1, 2)), processed.toList())
+        } finally {
+            scope.cancel()
+        }
+    }
+
+    @Test
+    @Timeout(value = 10L, unit = TimeUnit.SECONDS)
+    fun `concurrency is bounded by workers`() = runBlocking {
+        val scope = CoroutineScope(SupervisorJob())
+        val current = AtomicInteger(0)
+        val max = AtomicInteger(0)
+
+        try {
+            val queue = ReconcileWorkQueue<Int>("test", scope, 3) { _, _ ->
+                max.accumulateAndGet(current.incrementAndGet(), ::maxOf)
+                delay(20L)
+                current.decrementAndGet()
+            }
+
+            repeat(30) { queue.add("key-$it", it) }
+            while (queue.getStats().processed < 30L) {
+                delay(10L)
+            }
+
+            Assertions.assertEquals(3, max.get())
+        } finally {
+            scope.cancel()
+        }
+    }
+}
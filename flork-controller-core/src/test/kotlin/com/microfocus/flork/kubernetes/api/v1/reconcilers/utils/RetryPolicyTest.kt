@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import io.fabric8.kubernetes.client.KubernetesClientException
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class RetryPolicyTest {
+    @Test
+    fun `retryable errors are retried with backoff`() = runBlocking<Unit> {
+        val policy = RetryPolicy(10L, 40L, 10_000L)
+        val delays = mutableListOf<Long>()
+        val codes = listOf(409, 429, 503, 0)
+
+        val result = policy.run({ _, _, delayMillis -> delays.add(delayMillis) }) { attempt ->
+            if (attempt < codes.size) {
+                throw KubernetesClientException("failure", codes[attempt], null)
+            }
+            attempt
+        }
+
+        Assertions.assertEquals(codes.size, result)
+        listOf(10L, 20L, 40L, 40L).zip(delays).forEach { (backoff, delay) ->
+            Assertions.assertTrue(delay in (backoff / 2L)..backoff, "$delay not in jitter range of $backoff")
+        }
+    }
+
+    @Test
+    fun `fatal errors and errors after the deadline are thrown`() = runBlocking<Unit> {
+        var attempts = 0
+        val fatal = Assertions.assertThrows(KubernetesClientException::class.java) {
+            runBlocking {
+                RetryPolicy(10L, 40L, 10_000L).run {
+                    attempts++
+                    throw KubernetesClientException("invalid", 422, null)
+                }
+            }
+        }
+        Assertions.assertEquals(422, fatal.code)
+        Assertions.assertEquals(1, attempts)
+
+        attempts = 0
+        val startNanos = System.nanoTime()
+        Assertions.assertThrows(KubernetesClientException::class.java) {
+            runBlocking {
+                RetryPolicy(10L, 40L, 200L).run {
+                    attempts++
+                    throw KubernetesClientException("conflict", 409, null)
+                }
+            }
+        }
+        Assertions.assertTrue(attempts > 1)
+        Assertions.assertTrue(System.nanoTime() - startNanos < 1_000_000_000L)
+    }
+}
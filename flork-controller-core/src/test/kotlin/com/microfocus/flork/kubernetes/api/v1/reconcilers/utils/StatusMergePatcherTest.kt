@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.reconcilers.utils
+
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobCustomResource
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobSpec
+import com.microfocus.flork.kubernetes.api.v1.model.FlorkPhase
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder
+import io.fabric8.kubernetes.client.KubernetesClientException
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer
+import io.fabric8.kubernetes.client.utils.Serialization
+import org.junit.jupiter.api.*
+
+class StatusMergePatcherTest {
+    companion object {
+        private val KUBERNETES_SERVER = KubernetesServer(true, true)
+
+        @JvmStatic
+        @BeforeAll
+        fun setUp() {
+            KUBERNETES_SERVER.before()
+        }
+
+        @JvmStatic
+        @AfterAll
+        fun tearDown() {
+            KUBERNETES_SERVER.after()
+        }
+    }
+
+    private val patcher by lazy { StatusMergePatcher(KUBERNETES_SERVER.client, FlinkJobCustomResource::class.java) }
+
+    private fun createJob(name: String) = FlinkJobCustomResource().apply {
+        metadata = ObjectMetaBuilder()
+                .withNamespace("flork")
+                .withName(name)
+                .build()
+        spec = FlinkJobSpec().apply {
+            jobClassName = "com.example.StreamingJob"
+        }
+        status.florkPhase = FlorkPhase.DEPLOYING
+        status.knownSavepointPath = "s3://savepoints/savepoint-1"
+    }
+
+    @Test
+    fun `patch only contains status and clears nulls`() {
+        val flinkJob = createJob("foo").apply {
+            metadata.resourceVersion = "42"
+            status.knownSavepointPath = null
+        }
+
+        val patch = Serialization.jsonMapper().readTree(patcher.createPatch(flinkJob))
+        Assertions.assertEquals(setOf("metadata", "status"), patch.fieldNames().asSequence().toSet())
+        Assertions.assertEquals("42", patch["metadata"]["resourceVersion"].asText())
+        Assertions.assertEquals("DEPLOYING", patch["status"]["florkPhase"].asText())
+        Assertions.assertTrue(patch["status"]["knownSavepointPath"].isNull)
+    }
+
+    @Test
+    fun `status subresource is patched`() {
+        val crOperation = KUBERNETES_SERVER.client.resources(FlinkJobCustomResource::class.java).inNamespace("flork")
+        val created = crOperation.create(createJob("bar"))
+
+        created.status.florkPhase = FlorkPhase.DEPLOYED
+        created.status.knownSavepointPath = null
+        val patched = patcher.patchStatus(created)
+        Assertions.assertEquals(FlorkPhase.DEPLOYED, patched.status.florkPhase)
+
+        val fetched = crOperation.withName("bar").get()
+        Assertions.assertEquals(FlorkPhase.DEPLOYED, fetched.status.florkPhase)
+        Assertions.assertNull(fetched.status.knownSavepointPath)
+        Assertions.assertEquals("com.example.StreamingJob", fetched.spec.jobClassName)
+
+        val missing = createJob("baz")
+        Assertions.assertThrows(KubernetesClientException::class.java) {
+            patcher.patchStatus(missing)
+        }
+    }
+}
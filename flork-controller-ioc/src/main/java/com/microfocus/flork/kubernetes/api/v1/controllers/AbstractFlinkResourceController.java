@@ -17,6 +17,7 @@
 package com.microfocus.flork.kubernetes.api.v1.controllers;
 
 import com.microfocus.flork.kubernetes.api.v1.reconcilers.factories.FlinkJobReconcilerFactory;
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.utils.FlinkSharedResources;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
 import org.jetbrains.annotations.NotNull;
@@ -99,6 +100,7 @@ public class AbstractFlinkResourceController {
         }
         try {
             FlinkJobReconcilerFactory.stopFactories();
+            FlinkSharedResources.reset();
             onClose();
         } finally {
             k8sClient.close();
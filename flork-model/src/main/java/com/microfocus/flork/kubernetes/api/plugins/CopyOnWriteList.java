@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.plugins;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * List counterpart of {@link CopyOnWriteMap}.
+ */
+public class CopyOnWriteList<E> extends AbstractList<E> implements RandomAccess {
+    private final List<E> source;
+
+    // null until first write
+    private List<E> copy = null;
+
+    // wrapped nested containers read before the first write, by index
+    private final Map<Integer, E> nestedViews = new HashMap<>();
+
+    public CopyOnWriteList(@NotNull List<E> source) {
+        this.source = source;
+    }
+
+    public boolean isCopied() {
+        return copy != null;
+    }
+
+    private List<E> ensureCopy() {
+        if (copy == null) {
+            copy = new ArrayList<>(source);
+            for (Map.Entry<Integer, E> view : nestedViews.entrySet()) {
+                copy.set(view.getKey(), view.getValue());
+            }
+            nestedViews.clear();
+        }
+        return copy;
+    }
+
+    @Override
+    public int size() {
+        return copy == null ? source.size() : copy.size();
+    }
+
+    @Override
+    public E get(int index) {
+        if (copy != null) {
+            E value = copy.get(index);
+            E wrapped = CopyOnWriteMap.wrapNested(value);
+            if (wrapped != value) {
+                copy.set(index, wrapped);
+            }
+            return wrapped;
+        }
+
+        E view = nestedViews.get(index);
+        if (view != null) {
+            return view;
+        }
+
+        E value = source.get(index);
+        E wrapped = CopyOnWriteMap.wrapNested(value);
+        if (wrapped != value) {
+            nestedViews.put(index, wrapped);
+        }
+        return wrapped;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        return ensureCopy().set(index, element);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        ensureCopy().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        E removed = ensureCopy().remove(index);
+        modCount++;
+        return removed;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.plugins;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Map view that reads from a source map and only copies it on the first modification.
+ * Nested maps and lists are wrapped lazily in the same way, so only the subtrees that are actually modified get copied,
+ * and the source is never modified.
+ */
+public class CopyOnWriteMap<K, V> extends AbstractMap<K, V> {
+    private final Map<K, V> source;
+
+    // null until first write
+    private Map<K, V> copy = null;
+
+    // wrapped nested containers read before the first write
+    private final Map<K, V> nestedViews = new HashMap<>();
+
+    public CopyOnWriteMap(@NotNull Map<K, V> source) {
+        this.source = source;
+    }
+
+    public boolean isCopied() {
+        return copy != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T wrapNested(T value) {
+        if (value instanceof CopyOnWriteMap || value instanceof CopyOnWriteList) {
+            return value;
+        } else if (value instanceof Map) {
+            return (T) new CopyOnWriteMap<>((Map<Object, Object>) value);
+        } else if (value instanceof List) {
+            return (T) new CopyOnWriteList<>((List<Object>) value);
+        } else {
+            return value;
+        }
+    }
+
+    private Map<K, V> ensureCopy() {
+        if (copy == null) {
+            copy = new LinkedHashMap<>(source);
+            copy.putAll(nestedViews);
+            nestedViews.clear();
+        }
+        return copy;
+    }
+
+    @Override
+    public int size() {
+        return copy == null ? source.size() : copy.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return copy == null ? source.containsKey(key) : copy.containsKey(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (copy != null) {
+            V value = copy.get(key);
+            V wrapped = wrapNested(value);
+            if (wrapped != value) {
+                copy.put((K) key, wrapped);
+            }
+            return wrapped;
+        }
+
+        V view = nestedViews.get(key);
+        if (view != null) {
+            return view;
+        }
+
+        V value = source.get(key);
+        V wrapped = wrapNested(value);
+        if (wrapped != value) {
+            nestedViews.put((K) key, wrapped);
+        }
+        return wrapped;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return ensureCopy().put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (!containsKey(key)) {
+            return null;
+        }
+        return ensureCopy().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        copy = new LinkedHashMap<>();
+        nestedViews.clear();
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return CopyOnWriteMap.this.size();
+            }
+
+            @NotNull
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private final boolean iteratingCopy = copy != null;
+        private final Iterator<K> keys = iteratingCopy ? copy.keySet().iterator() : source.keySet().iterator();
+        private K lastKey = null;
+        private boolean removable = false;
+
+        @Override
+        public boolean hasNext() {
+            return keys.hasNext();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            K key = keys.next();
+            lastKey = key;
+            removable = true;
+            return new SimpleEntry<>(key, get(key)) {
+                @Override
+                public V setValue(V value) {
+                    super.setValue(value);
+                    return put(key, value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (!removable) {
+                throw new IllegalStateException();
+            }
+            removable = false;
+            if (iteratingCopy) {
+                keys.remove();
+            } else {
+                // the source is iterated, so the copy can be modified freely
+                CopyOnWriteMap.this.remove(lastKey);
+            }
+        }
+    }
+}
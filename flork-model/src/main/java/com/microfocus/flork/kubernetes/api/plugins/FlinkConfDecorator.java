@@ -21,6 +21,10 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.Map;
 
+/**
+ * Discovered with {@link java.util.ServiceLoader}. One instance decorates every resource,
+ * possibly from several threads at once, so implementations must be thread-safe, ideally stateless.
+ */
 public interface FlinkConfDecorator {
     int priority();
 
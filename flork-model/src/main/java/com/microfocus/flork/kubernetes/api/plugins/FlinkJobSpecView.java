@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.plugins;
+
+import com.microfocus.flork.kubernetes.api.v1.model.FlinkJobSpec;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+import io.fabric8.kubernetes.api.model.PodSpec;
+import io.fabric8.kubernetes.api.model.PodSpecBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Inputs for the decorator chain that can be modified without affecting the spec they come from.
+ * The Flink configuration is a {@link CopyOnWriteMap}, and pod specs and metadata are copied with their builders,
+ * which is much cheaper than cloning through Java serialization.
+ */
+public class FlinkJobSpecView {
+    private final FlinkJobSpec spec;
+
+    public FlinkJobSpecView(@NotNull FlinkJobSpec spec) {
+        this.spec = spec;
+    }
+
+    @NotNull
+    public Map<String, Object> getFlinkConf() {
+        return spec.flinkConf == null ? new LinkedHashMap<>() : new CopyOnWriteMap<>(spec.flinkConf);
+    }
+
+    @NotNull
+    public ObjectMeta getJobManagerPodMeta() {
+        return spec.jobManagerPodMeta == null ? new ObjectMeta() : new ObjectMetaBuilder(spec.jobManagerPodMeta).build();
+    }
+
+    @NotNull
+    public PodSpec getJobManagerPodSpec() {
+        return copyOrEmpty(spec.jobManagerPodSpec);
+    }
+
+    /**
+     * The task managers use the job manager's pod spec if they don't have their own.
+     */
+    @NotNull
+    public PodSpec getTaskManagerPodSpec() {
+        return copyOrEmpty(spec.taskManagerPodSpec == null ? spec.jobManagerPodSpec : spec.taskManagerPodSpec);
+    }
+
+    @NotNull
+    private static PodSpec copyOrEmpty(PodSpec podSpec) {
+        return podSpec == null ? new PodSpec() : new PodSpecBuilder(podSpec).build();
+    }
+}
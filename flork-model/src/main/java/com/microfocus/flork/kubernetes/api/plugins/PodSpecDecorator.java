@@ -21,6 +21,10 @@ import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.api.model.PodSpec;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * Discovered with {@link java.util.ServiceLoader}. Instances are shared by concurrent renders of pod templates,
+ * so they must not keep per-resource state and must be thread-safe.
+ */
 public interface PodSpecDecorator {
     int priority();
 
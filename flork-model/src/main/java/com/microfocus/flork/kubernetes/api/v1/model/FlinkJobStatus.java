@@ -19,23 +19,39 @@ package com.microfocus.flork.kubernetes.api.v1.model;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public class FlinkJobStatus implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Older transitions are dropped to keep the resource small.
+     */
+    public static final int MAX_TRANSITIONS = 10;
+
     public FlorkPhase florkPhase = FlorkPhase.CREATED;
 
     public Long generationDuringLastTransition;
 
     public String knownSavepointPath;
 
+    public List<FlinkJobTransition> transitions;
+
+    public void addTransition(FlinkJobTransition transition) {
+        List<FlinkJobTransition> list = transitions == null ? new ArrayList<>() : new ArrayList<>(transitions);
+        list.add(transition);
+        transitions = list.size() > MAX_TRANSITIONS ? new ArrayList<>(list.subList(list.size() - MAX_TRANSITIONS, list.size())) : list;
+    }
+
     @Override
     public String toString() {
         return "FlinkJobStatus{" +
                 "florkPhase=" + florkPhase +
                 ", generationDuringLastTransition=" + generationDuringLastTransition +
                 ", knownSavepointPath='" + knownSavepointPath + "'" +
+                ", transitions=" + (transitions == null ? 0 : transitions.size()) +
                 '}';
     }
 }
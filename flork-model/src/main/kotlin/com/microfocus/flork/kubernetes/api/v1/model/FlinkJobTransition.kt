@@ -0,0 +1,48 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.model
+
+import com.fasterxml.jackson.annotation.JsonInclude
+import java.io.Serializable
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+
+/**
+ * A phase change recorded in [FlinkJobStatus.transitions].
+ * Durations are null if the transition wasn't driven by Flork, e.g. when a job finishes on its own.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+data class FlinkJobTransition(
+        var timestamp: String? = null,
+        var from: FlorkPhase? = null,
+        var to: FlorkPhase? = null,
+        var durationMillis: Long? = null,
+        var savepointMillis: Long? = null,
+        var generation: Long? = null
+) : Serializable {
+    companion object {
+        private const val serialVersionUID = 1L
+
+        /**
+         * A transition that ends now, its duration is measured from [startNanos] if known.
+         */
+        @JvmStatic
+        fun endingNow(from: FlorkPhase?, to: FlorkPhase, generation: Long?, startNanos: Long?, savepointMillis: Long? = null): FlinkJobTransition {
+            val durationMillis = startNanos?.let { TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - it) }
+            return FlinkJobTransition(Instant.now().toString(), from, to, durationMillis, savepointMillis, generation)
+        }
+    }
+}
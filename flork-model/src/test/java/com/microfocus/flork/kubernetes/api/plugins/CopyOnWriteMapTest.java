@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.plugins;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+public class CopyOnWriteMapTest {
+    private static Map<String, Object> createSource() {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("a", 1);
+        Map<String, Object> source = new LinkedHashMap<>();
+        source.put("scalar", "x");
+        source.put("nested", nested);
+        source.put("list", new ArrayList<>(List.of(new LinkedHashMap<>(Map.of("b", 2)))));
+        return source;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testModificationsDoNotReachSource() {
+        Map<String, Object> source = createSource();
+        Map<String, Object> expected = createSource();
+        CopyOnWriteMap<String, Object> view = new CopyOnWriteMap<>(source);
+
+        Assertions.assertEquals(expected, view);
+        Assertions.assertFalse(view.isCopied());
+
+        ((Map<String, Object>) view.get("nested")).put("a", 10);
+        ((Map<String, Object>) ((List<Object>) view.get("list")).get(0)).put("c", 3);
+        // only nested views were copied
+        Assertions.assertFalse(view.isCopied());
+
+        view.put("added", true);
+        view.remove("scalar");
+        Assertions.assertTrue(view.isCopied());
+
+        Assertions.assertEquals(expected, source);
+        Assertions.assertEquals(10, ((Map<String, Object>) view.get("nested")).get("a"));
+        Assertions.assertEquals(3, ((Map<String, Object>) ((List<Object>) view.get("list")).get(0)).get("c"));
+        Assertions.assertEquals(Set.of("nested", "list", "added"), view.keySet());
+    }
+
+    @Test
+    public void testIteratorModifications() {
+        Map<String, Object> source = createSource();
+        CopyOnWriteMap<String, Object> view = new CopyOnWriteMap<>(source);
+
+        Iterator<Map.Entry<String, Object>> iterator = view.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Object> entry = iterator.next();
+            if (entry.getKey().equals("scalar")) {
+                entry.setValue("y");
+            } else if (entry.getKey().equals("list")) {
+                iterator.remove();
+            }
+        }
+
+        Assertions.assertEquals(Map.of("scalar", "y", "nested", Map.of("a", 1)), view);
+        Assertions.assertEquals(createSource(), source);
+    }
+}
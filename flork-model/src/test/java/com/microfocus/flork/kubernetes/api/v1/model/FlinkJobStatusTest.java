@@ -0,0 +1,37 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microfocus.flork.kubernetes.api.v1.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FlinkJobStatusTest {
+    @Test
+    public void testTransitionsAreCapped() {
+        FlinkJobStatus status = new FlinkJobStatus();
+        for (long generation = 1L; generation <= FlinkJobStatus.MAX_TRANSITIONS + 2; generation++) {
+            status.addTransition(FlinkJobTransition.endingNow(FlorkPhase.CREATED, FlorkPhase.DEPLOYING, generation, System.nanoTime(), null));
+        }
+
+        Assertions.assertEquals(FlinkJobStatus.MAX_TRANSITIONS, status.transitions.size());
+        // oldest ones are dropped
+        Assertions.assertEquals(3L, status.transitions.get(0).getGeneration());
+        Assertions.assertEquals(FlinkJobStatus.MAX_TRANSITIONS + 2L, status.transitions.get(FlinkJobStatus.MAX_TRANSITIONS - 1).getGeneration());
+        Assertions.assertNotNull(status.transitions.get(0).getTimestamp());
+        Assertions.assertNotNull(status.transitions.get(0).getDurationMillis());
+        Assertions.assertNull(status.transitions.get(0).getSavepointMillis());
+    }
+}
@@ -18,6 +18,8 @@ package com.microfocus.flork.spring.config;
 
 import com.microfocus.flork.kubernetes.api.v1.controllers.WithoutCRD;
 import com.microfocus.flork.kubernetes.api.v1.controllers.webhooks.ValidatingWebhooksController;
+import com.microfocus.flork.spring.endpoints.FlorkPhasersEndpoint;
+import com.microfocus.flork.spring.endpoints.FlorkRecordingEndpoint;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.springframework.context.annotation.*;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -39,7 +41,7 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
                 })
         }
 )
-@Import({WebSecurityConfig.class, KubernetesClientProvider.class})
+@Import({WebSecurityConfig.class, KubernetesClientProvider.class, FlorkRecordingEndpoint.class, FlorkPhasersEndpoint.class})
 public class FlorkSpringConfig extends ResourceConfig {
         public FlorkSpringConfig() {
                 this.register(ValidatingWebhooksController.class);
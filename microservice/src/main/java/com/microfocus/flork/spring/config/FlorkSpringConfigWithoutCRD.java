@@ -18,6 +18,8 @@ package com.microfocus.flork.spring.config;
 
 import com.microfocus.flork.kubernetes.api.v1.controllers.ConfigMapFlinkResourceController;
 import com.microfocus.flork.kubernetes.api.v1.controllers.WithoutCRD;
+import com.microfocus.flork.spring.endpoints.FlorkPhasersEndpoint;
+import com.microfocus.flork.spring.endpoints.FlorkRecordingEndpoint;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.springframework.context.annotation.*;
 
@@ -35,7 +37,7 @@ import org.springframework.context.annotation.*;
                 })
         }
 )
-@Import({WebSecurityConfig.class, KubernetesClientProvider.class})
+@Import({WebSecurityConfig.class, KubernetesClientProvider.class, FlorkRecordingEndpoint.class, FlorkPhasersEndpoint.class})
 public class FlorkSpringConfigWithoutCRD extends ResourceConfig {
     public FlorkSpringConfigWithoutCRD() {
         this.register(ConfigMapFlinkResourceController.class);
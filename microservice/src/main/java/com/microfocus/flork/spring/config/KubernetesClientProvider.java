@@ -16,8 +16,14 @@
 
 package com.microfocus.flork.spring.config;
 
+import com.microfocus.flork.kubernetes.api.utils.KubernetesApiMetricsInterceptor;
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.ConfigBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.http.HttpClient;
+import io.fabric8.kubernetes.client.okhttp.OkHttpClientFactory;
+import okhttp3.OkHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
@@ -33,6 +39,13 @@ public class KubernetesClientProvider {
     @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
     public KubernetesClient fabric8KubernetesClient() {
         LOG.debug("Instantiating Fabric8's kubernetes client.");
-        return new DefaultKubernetesClient();
+        Config config = new ConfigBuilder().build();
+        HttpClient httpClient = new OkHttpClientFactory() {
+            @Override
+            protected void additionalConfig(OkHttpClient.Builder builder) {
+                builder.addInterceptor(new KubernetesApiMetricsInterceptor());
+            }
+        }.createHttpClient(config);
+        return new DefaultKubernetesClient(httpClient, config);
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.spring.endpoints;
+
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.CoroutineFlinkJobReconciler;
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.CoroutineFlinkSessionReconciler;
+import com.microfocus.flork.kubernetes.api.v1.reconcilers.phasers.AbstractReconcilerPhaser;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory state of this replica's phasers, e.g. {@code /mgmt/flork/phasers}.
+ */
+@Endpoint(id = "flork")
+public class FlorkPhasersEndpoint {
+    static final String PHASERS = "phasers";
+
+    @ReadOperation
+    public WebEndpointResponse<Map<String, Object>> read(@Selector String name) {
+        if (!PHASERS.equals(name)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+
+        List<AbstractReconcilerPhaser.Snapshot> snapshots = new ArrayList<>(CoroutineFlinkJobReconciler.getPhaserSnapshots());
+        snapshots.addAll(CoroutineFlinkSessionReconciler.getPhaserSnapshots());
+        snapshots.sort(Comparator.comparing(AbstractReconcilerPhaser.Snapshot::getKind).thenComparing(AbstractReconcilerPhaser.Snapshot::getKey));
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("summary", summarize(snapshots));
+        body.put(PHASERS, snapshots);
+        return new WebEndpointResponse<>(body);
+    }
+
+    static Map<String, Object> summarize(List<AbstractReconcilerPhaser.Snapshot> snapshots) {
+        Map<String, Integer> byPhase = new TreeMap<>();
+        int active = 0;
+        int leading = 0;
+        int failing = 0;
+        int backlog = 0;
+        int awaitingDeployed = 0;
+        int awaitingCompleted = 0;
+        for (AbstractReconcilerPhaser.Snapshot snapshot : snapshots) {
+            byPhase.merge(String.valueOf(snapshot.getPhase()), 1, Integer::sum);
+            active += snapshot.getActive() ? 1 : 0;
+            leading += snapshot.getLeading() ? 1 : 0;
+            failing += snapshot.getFailures() != null && snapshot.getFailures() > 0 ? 1 : 0;
+            backlog += snapshot.getChannelBacklog();
+            awaitingDeployed += Boolean.TRUE.equals(snapshot.getSetAsDeployedActive()) ? 1 : 0;
+            awaitingCompleted += Boolean.TRUE.equals(snapshot.getSetAsCompletedActive()) ? 1 : 0;
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("total", snapshots.size());
+        summary.put("active", active);
+        summary.put("leading", leading);
+        summary.put("failing", failing);
+        summary.put("channelBacklog", backlog);
+        summary.put("awaitingDeployed", awaitingDeployed);
+        summary.put("awaitingCompleted", awaitingCompleted);
+        summary.put("byPhase", byPhase);
+        return summary;
+    }
+}
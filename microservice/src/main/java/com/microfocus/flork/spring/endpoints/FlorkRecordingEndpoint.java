@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021-2022 Micro Focus or one of its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.flork.spring.endpoints;
+
+import com.microfocus.flork.kubernetes.api.utils.FlorkRecording;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Dumps the continuous flight recording (including Flork's reconciliation events) as a {@code .jfr} file.
+ */
+@Endpoint(id = "jfr")
+public class FlorkRecordingEndpoint {
+    public FlorkRecordingEndpoint() {
+        FlorkRecording.start();
+    }
+
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dump() throws IOException {
+        Path target = Files.createTempFile("flork-", ".jfr");
+        if (!FlorkRecording.dump(target)) {
+            Files.deleteIfExists(target);
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        return new WebEndpointResponse<>(new TemporaryFileResource(target));
+    }
+
+    private static class TemporaryFileResource extends FileSystemResource {
+        private final Path path;
+
+        TemporaryFileResource(Path path) {
+            super(path);
+            this.path = path;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            };
+        }
+    }
+}